@@ -0,0 +1,131 @@
+package com.laowch.dragtosort;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the area and Lanczos resampling of ARGB buffers, alone and split across threads.
+ */
+public class ArgbResamplerTest extends TestCase {
+
+    private static final int BLACK = 0xff000000;
+    private static final int WHITE = 0xffffffff;
+    private static final int RED = 0xffff0000;
+    private static final int BLUE = 0xff0000ff;
+
+    public void testUniformColorStaysUniform() {
+        int[] src = new int[300 * 200];
+        Arrays.fill(src, 0xff336699);
+
+        for (int filter : new int[]{ArgbResampler.FILTER_AREA, ArgbResampler.FILTER_LANCZOS3}) {
+            int[] dst = new int[70 * 45];
+            new ArgbResampler(filter).resample(src, 300, 200, dst, 70, 45);
+            for (int pixel : dst) {
+                assertEquals(0xff336699, pixel);
+            }
+        }
+    }
+
+    public void testAreaAveragesCheckerboard() {
+        // bilinear sampling at 1/4 lands on single pixels and keeps the pattern, area averaging greys it out
+        int[] src = new int[64 * 64];
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                src[y * 64 + x] = (x + y) % 2 == 0 ? BLACK : WHITE;
+            }
+        }
+
+        int[] dst = new int[16 * 16];
+        new ArgbResampler(ArgbResampler.FILTER_AREA).resample(src, 64, 64, dst, 16, 16);
+        for (int pixel : dst) {
+            assertEquals(0xff808080, pixel);
+        }
+    }
+
+    public void testSameSizeIsIdentity() {
+        int[] src = randomPixels(40 * 30, 1);
+
+        for (int filter : new int[]{ArgbResampler.FILTER_AREA, ArgbResampler.FILTER_LANCZOS3}) {
+            int[] dst = new int[40 * 30];
+            new ArgbResampler(filter).resample(src, 40, 30, dst, 40, 30);
+            assertTrue(Arrays.equals(src, dst));
+        }
+    }
+
+    public void testCropRectangleIsHonoured() {
+        // left half red, right half blue, resample the right half only
+        int[] src = new int[100 * 50];
+        for (int y = 0; y < 50; y++) {
+            for (int x = 0; x < 100; x++) {
+                src[y * 100 + x] = x < 50 ? RED : BLUE;
+            }
+        }
+
+        int[] dst = new int[10 * 10];
+        new ArgbResampler(ArgbResampler.FILTER_AREA).resample(src, 100, 50, 50, 0, 100, 50, dst, 10, 10);
+        for (int pixel : dst) {
+            assertEquals(BLUE, pixel);
+        }
+    }
+
+    public void testThreadsGiveTheSameResult() {
+        int[] src = randomPixels(800 * 600, 7);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int filter : new int[]{ArgbResampler.FILTER_AREA, ArgbResampler.FILTER_LANCZOS3}) {
+                int[] single = new int[333 * 250];
+                int[] parallel = new int[333 * 250];
+                new ArgbResampler(filter).resample(src, 800, 600, single, 333, 250);
+                new ArgbResampler(filter, executor, 4).resample(src, 800, 600, parallel, 333, 250);
+                assertTrue(Arrays.equals(single, parallel));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testRunsOnItsOwnExecutorThread() throws Exception {
+        // the only pool thread is busy with the caller, its helpers never get to run
+        final int[] src = randomPixels(400 * 300, 3);
+        final int[] expected = new int[100 * 75];
+        new ArgbResampler(ArgbResampler.FILTER_AREA).resample(src, 400, 300, expected, 100, 75);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            final int[] dst = new int[100 * 75];
+            final ArgbResampler resampler = new ArgbResampler(ArgbResampler.FILTER_AREA, executor, 2);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    resampler.resample(src, 400, 300, dst, 100, 75);
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(Arrays.equals(expected, dst));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testUpscaleKeepsEdgesInRange() {
+        int[] src = {BLACK, WHITE, BLACK, WHITE};
+        int[] dst = new int[16];
+        new ArgbResampler(ArgbResampler.FILTER_LANCZOS3).resample(src, 4, 1, dst, 16, 1);
+        for (int pixel : dst) {
+            assertEquals(0xff, pixel >>> 24);
+        }
+    }
+
+    private static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt() | 0xff000000;
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,42 @@
+package com.laowch.dragtosort;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the auto-scroll speed follows the depth into the edge zones.
+ */
+public class AutoScrollUtilsTest extends TestCase {
+
+    private static final int VIEWPORT_TOP = 1000;
+
+    private static final int VIEWPORT_BOTTOM = 2000;
+
+    private static final int ZONE = 100;
+
+    private static final float MAX_SPEED = 1200;
+
+    public void testStillOutsideTheZones() {
+        assertEquals(0f, speed(1400, 1600), 0f);
+        assertEquals(0f, speed(VIEWPORT_TOP + ZONE, VIEWPORT_BOTTOM - ZONE), 0f);
+    }
+
+    public void testSpeedGrowsWithDepth() {
+        assertEquals(-MAX_SPEED / 4, speed(VIEWPORT_TOP + ZONE * 3 / 4, 1500), 0.01f);
+        assertEquals(-MAX_SPEED / 2, speed(VIEWPORT_TOP + ZONE / 2, 1500), 0.01f);
+        assertEquals(MAX_SPEED / 2, speed(1500, VIEWPORT_BOTTOM - ZONE / 2), 0.01f);
+    }
+
+    public void testFullSpeedAtAndBeyondTheEdge() {
+        assertEquals(-MAX_SPEED, speed(VIEWPORT_TOP, 1500), 0f);
+        assertEquals(-MAX_SPEED, speed(VIEWPORT_TOP - 500, 1500), 0f);
+        assertEquals(MAX_SPEED, speed(1500, VIEWPORT_BOTTOM + 500), 0f);
+    }
+
+    public void testDeeperEdgeWinsForTallItems() {
+        assertEquals(MAX_SPEED, speed(VIEWPORT_TOP + ZONE / 2, VIEWPORT_BOTTOM + 10), 0f);
+    }
+
+    private static float speed(int top, int bottom) {
+        return AutoScrollUtils.computeScrollSpeed(top, bottom, VIEWPORT_TOP, VIEWPORT_BOTTOM, ZONE, MAX_SPEED);
+    }
+}
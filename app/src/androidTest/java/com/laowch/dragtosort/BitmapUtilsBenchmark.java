@@ -0,0 +1,109 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares {@link BitmapUtils#resizeBitmap} with the scale-then-crop path it replaced,
+ * by bytes allocated on the test thread, and logs the wall time per image.
+ */
+public class BitmapUtilsBenchmark extends TestCase {
+
+    private static final String TAG = "BitmapUtilsBenchmark";
+
+    private static final int ITERATIONS = 10;
+
+    private static final int SRC_WIDTH = 2048;
+    private static final int SRC_HEIGHT = 1536;
+
+    private static final int TARGET_WIDTH = 1080;
+    private static final int TARGET_HEIGHT = 1080;
+
+    private Bitmap mSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSource = Bitmap.createBitmap(SRC_WIDTH, SRC_HEIGHT, Bitmap.Config.ARGB_8888);
+        mSource.eraseColor(0xff336699);
+        mSource.setHasAlpha(false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSource.recycle();
+        super.tearDown();
+    }
+
+    public void testSinglePassAllocatesLess() {
+        long twoPassBytes = measureAllocatedBytes(false);
+        long singlePassBytes = measureAllocatedBytes(true);
+
+        Log.i(TAG, "bytes per image: two-pass " + twoPassBytes / ITERATIONS + ", single-pass " + singlePassBytes / ITERATIONS);
+        assertTrue(singlePassBytes < twoPassBytes);
+    }
+
+    /**
+     * Only logs, wall time over a few iterations is too noisy to assert on. The benchmark
+     * module has the rigorous comparison.
+     */
+    public void testLogWallTime() {
+        // warm up both paths
+        measureMillis(false);
+        measureMillis(true);
+
+        long twoPassMillis = measureMillis(false);
+        long singlePassMillis = measureMillis(true);
+
+        Log.i(TAG, "ms per image: two-pass " + twoPassMillis / (float) ITERATIONS + ", single-pass " + singlePassMillis / (float) ITERATIONS);
+    }
+
+    public void testRgb565HalvesOutputSize() {
+        Bitmap argb = BitmapUtils.resizeBitmap(mSource, TARGET_WIDTH, TARGET_HEIGHT, Bitmap.Config.ARGB_8888, null);
+        Bitmap rgb565 = BitmapUtils.resizeBitmap(mSource, TARGET_WIDTH, TARGET_HEIGHT, BitmapUtils.getPreferredConfig(mSource), null);
+
+        assertEquals(Bitmap.Config.RGB_565, rgb565.getConfig());
+        assertEquals(argb.getByteCount() / 2, rgb565.getByteCount());
+    }
+
+    public void testReuseDoesNotAllocateBitmap() {
+        Bitmap reuse = Bitmap.createBitmap(TARGET_WIDTH, TARGET_HEIGHT, Bitmap.Config.ARGB_8888);
+        assertSame(reuse, BitmapUtils.resizeBitmap(mSource, TARGET_WIDTH, TARGET_HEIGHT, null, reuse));
+    }
+
+    private long measureAllocatedBytes(boolean singlePass) {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < ITERATIONS; i++) {
+            resize(singlePass);
+        }
+        long bytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        return bytes;
+    }
+
+    private long measureMillis(boolean singlePass) {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            resize(singlePass);
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private void resize(boolean singlePass) {
+        if (singlePass) {
+            BitmapUtils.resizeBitmap(mSource, TARGET_WIDTH, TARGET_HEIGHT).recycle();
+        } else {
+            // the path resizeBitmap used before: a full scaled copy, then a cropped copy
+            float heightRatio = (float) SRC_HEIGHT / TARGET_HEIGHT;
+            Bitmap scaled = Bitmap.createScaledBitmap(mSource, Math.round(SRC_WIDTH / heightRatio), TARGET_HEIGHT, true);
+            Bitmap cropped = Bitmap.createBitmap(scaled, Math.round((scaled.getWidth() - TARGET_WIDTH) / 2.0f), 0, TARGET_WIDTH, TARGET_HEIGHT);
+            cropped.recycle();
+            scaled.recycle();
+        }
+    }
+}
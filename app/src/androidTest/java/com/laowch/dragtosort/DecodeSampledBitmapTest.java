@@ -0,0 +1,138 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.os.ParcelFileDescriptor;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Decodes a real JPEG through {@link BitmapUtils#decodeSampledBitmap} and measures the
+ * bytes the test thread allocates while doing it, bitmap pixels included.
+ */
+public class DecodeSampledBitmapTest extends InstrumentationTestCase {
+
+    private static final String TAG = "DecodeSampledBitmapTest";
+
+    private static final int SRC_WIDTH = 3264;
+    private static final int SRC_HEIGHT = 2448;
+
+    private static final int TARGET_WIDTH = 720;
+
+    /**
+     * Room for the decoder's stream buffers and the objects around the bitmaps.
+     */
+    private static final long OVERHEAD_BYTES = 256 * 1024;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getInstrumentation().getTargetContext().getCacheDir(), "decode_sampled.jpg");
+        final Bitmap source = Bitmap.createBitmap(SRC_WIDTH, SRC_HEIGHT, Bitmap.Config.RGB_565);
+        source.eraseColor(0xff336699);
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            source.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+            source.recycle();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testPeakAllocationStaysNearTargetSize() throws IOException {
+        final ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(mFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        final Bitmap bitmap;
+        final long allocatedBytes;
+        try {
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            bitmap = BitmapUtils.decodeSampledBitmap(descriptor.getFileDescriptor(), TARGET_WIDTH, new BitmapPool(0), null);
+            allocatedBytes = Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+        } finally {
+            descriptor.close();
+        }
+
+        assertNotNull(bitmap);
+        assertEquals(TARGET_WIDTH, bitmap.getWidth());
+
+        // the decode allocates RGB_565, two bytes a pixel
+        final long estimatedBytes = SampleSizeUtils.estimatePeakBytes(SRC_WIDTH, SRC_HEIGHT, TARGET_WIDTH, 2);
+        final long fullBytes = (long) SRC_WIDTH * SRC_HEIGHT * 2;
+        Log.i(TAG, "allocated " + allocatedBytes + ", estimated " + estimatedBytes + ", full decode " + fullBytes);
+
+        assertTrue("allocated " + allocatedBytes, allocatedBytes <= estimatedBytes + OVERHEAD_BYTES);
+        assertTrue("allocated " + allocatedBytes, allocatedBytes * 4 < fullBytes);
+    }
+
+    public void testNonSeekableDescriptorIsReopened() throws IOException {
+        final ParcelFileDescriptor[] pipe = openPipe();
+        final int[] reopenCount = new int[1];
+        final ParcelFileDescriptor[][] current = {pipe};
+        try {
+            final Bitmap bitmap = BitmapUtils.decodeSampledBitmap(pipe[0].getFileDescriptor(), TARGET_WIDTH,
+                    new BitmapPool(0), new BitmapUtils.IReopener() {
+                        @Override
+                        public FileDescriptor reopen() throws IOException {
+                            reopenCount[0]++;
+                            current[0][0].close();
+                            current[0] = openPipe();
+                            return current[0][0].getFileDescriptor();
+                        }
+                    });
+
+            assertNotNull(bitmap);
+            assertEquals(TARGET_WIDTH, bitmap.getWidth());
+            assertEquals(2, reopenCount[0]);
+        } finally {
+            current[0][0].close();
+        }
+    }
+
+    /**
+     * A pipe with the whole file written into it from another thread.
+     */
+    private ParcelFileDescriptor[] openPipe() throws IOException {
+        final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ParcelFileDescriptor.AutoCloseOutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
+                try {
+                    final byte[] buffer = new byte[8192];
+                    final FileInputStream in = new FileInputStream(mFile);
+                    try {
+                        int read;
+                        while ((read = in.read(buffer)) > 0) {
+                            out.write(buffer, 0, read);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException ignored) {
+                    // the reader closed its end early
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }).start();
+        return pipe;
+    }
+}
@@ -0,0 +1,130 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.test.InstrumentationTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Opens a {@link DiskThumbnailCache} over a directory and journal written by hand, the way
+ * they would be left by earlier runs of the app, including ones that crashed mid-write.
+ */
+public class DiskThumbnailCacheTest extends InstrumentationTestCase {
+
+    private static final String HEADER = "com.laowch.dragtosort.DiskThumbnailCache 1\n";
+
+    private static final String KEY_A = "content://media/1";
+    private static final String KEY_B = "content://media/2";
+    private static final String KEY_C = "content://media/3";
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getInstrumentation().getTargetContext().getCacheDir(), "thumbnails_test");
+        deleteDirectory();
+        assertTrue(mDirectory.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    public void testReplaysTheJournal() throws IOException {
+        final long lengthA = writeImage(KEY_A);
+        final long lengthB = writeImage(KEY_B);
+        writeJournal(HEADER
+                + "CLEAN " + name(KEY_A) + ' ' + lengthA + '\n'
+                + "CLEAN " + name(KEY_B) + ' ' + lengthB + '\n'
+                + "READ " + name(KEY_A) + '\n'
+                + "REMOVE " + name(KEY_B) + '\n');
+
+        final DiskThumbnailCache cache = new DiskThumbnailCache(mDirectory, Long.MAX_VALUE);
+        assertNotNull(cache.get(KEY_A));
+        assertNull(cache.get(KEY_B));
+        assertEquals(lengthA, cache.size());
+        // a removed entry whose file survived is swept on open
+        assertFalse(new File(mDirectory, name(KEY_B)).exists());
+    }
+
+    public void testSkipsATruncatedLastLine() throws IOException {
+        final long lengthA = writeImage(KEY_A);
+        writeImage(KEY_B);
+        writeJournal(HEADER
+                + "CLEAN " + name(KEY_A) + ' ' + lengthA + '\n'
+                + "CLEAN " + name(KEY_B));
+
+        final DiskThumbnailCache cache = new DiskThumbnailCache(mDirectory, Long.MAX_VALUE);
+        assertNull(cache.get(KEY_B));
+        assertEquals(lengthA, cache.size());
+        assertFalse(new File(mDirectory, name(KEY_B)).exists());
+
+        // the next open must see what was appended after the torn line
+        cache.remove(KEY_A);
+        assertEquals(0, new DiskThumbnailCache(mDirectory, Long.MAX_VALUE).size());
+    }
+
+    public void testRecoversFromACrashMidWrite() throws IOException {
+        final long lengthA = writeImage(KEY_A);
+        // renamed into place, but the process died before its CLEAN line
+        writeImage(KEY_B);
+        // died while compressing
+        final File tmpFile = new File(mDirectory, name(KEY_C) + ".tmp");
+        assertTrue(tmpFile.createNewFile());
+        // tracked, but deleted behind the cache's back
+        writeJournal(HEADER
+                + "CLEAN " + name(KEY_A) + ' ' + lengthA + '\n'
+                + "CLEAN " + name(KEY_C) + " 1234\n");
+
+        final DiskThumbnailCache cache = new DiskThumbnailCache(mDirectory, Long.MAX_VALUE);
+        assertNotNull(cache.get(KEY_A));
+        assertNull(cache.get(KEY_B));
+        assertNull(cache.get(KEY_C));
+        assertEquals(lengthA, cache.size());
+        assertFalse(new File(mDirectory, name(KEY_B)).exists());
+        assertFalse(tmpFile.exists());
+
+        assertEquals(lengthA, new DiskThumbnailCache(mDirectory, Long.MAX_VALUE).size());
+    }
+
+    private static String name(final String pKey) {
+        return DiskThumbnailCache.fileName(pKey);
+    }
+
+    private long writeImage(final String pKey) throws IOException {
+        final File file = new File(mDirectory, name(pKey));
+        final Bitmap bitmap = Bitmap.createBitmap(8, 8, Bitmap.Config.RGB_565);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+        return file.length();
+    }
+
+    private void writeJournal(final String pContent) throws IOException {
+        final FileOutputStream out = new FileOutputStream(new File(mDirectory, "journal"));
+        try {
+            out.write(pContent.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
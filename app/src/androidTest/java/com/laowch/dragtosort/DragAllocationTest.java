@@ -0,0 +1,122 @@
+package com.laowch.dragtosort;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+import android.widget.ScrollView;
+
+/**
+ * Drives the drag touch path with simulated move events and fails if the number of
+ * objects allocated grows with the number of moves.
+ */
+public class DragAllocationTest extends InstrumentationTestCase {
+
+    private static final int ROW_COUNT = 20;
+    private static final int ROW_HEIGHT = 150;
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private static final int MOVES = 200;
+
+    private ScrollView mScrollView;
+    private DraggableImageLayout mLayout;
+
+    private MotionEvent mMoveEvent;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = getInstrumentation().getTargetContext();
+
+                mScrollView = new ScrollView(context);
+                FrameLayout frame = new FrameLayout(context);
+                mLayout = new DraggableImageLayout(context);
+                mLayout.setOrientation(DraggableImageLayout.VERTICAL);
+                ImageView hoverView = new ImageView(context);
+
+                frame.addView(mLayout);
+                frame.addView(hoverView, new FrameLayout.LayoutParams(0, 0));
+                mScrollView.addView(frame);
+
+                mLayout.setScrollView(mScrollView);
+                mLayout.setHoverView(hoverView);
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    mLayout.getOrderModel().add(new ImageItem(null, WIDTH, ROW_HEIGHT, null));
+                }
+
+                mScrollView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+                mScrollView.layout(0, 0, WIDTH, HEIGHT);
+
+                long now = SystemClock.uptimeMillis();
+                MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, WIDTH / 2, ROW_HEIGHT / 2, 0);
+                mLayout.onTouchEvent(down);
+                down.recycle();
+
+                mLayout.beginDrag(0);
+                mMoveEvent = MotionEvent.obtain(now, now, MotionEvent.ACTION_MOVE, WIDTH / 2, ROW_HEIGHT / 2, 0);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mMoveEvent.recycle();
+        super.tearDown();
+    }
+
+    public void testMovesDoNotAllocate() {
+        // warm up lazily created framework state, such as the animation handler
+        countAllocations(MOVES);
+
+        int allocationsForMoves = countAllocations(MOVES);
+        int allocationsForTwiceTheMoves = countAllocations(MOVES * 2);
+
+        assertEquals("allocations grew with the number of moves", allocationsForMoves, allocationsForTwiceTheMoves);
+    }
+
+    /**
+     * Sweeps the finger up and down the list, swapping the dragged row on the way, and
+     * returns how many objects the main thread allocated meanwhile.
+     */
+    private int countAllocations(final int moves) {
+        final int[] count = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // stay clear of the edges so the scroll view does not start scrolling
+                int top = ROW_HEIGHT;
+                int bottom = HEIGHT - ROW_HEIGHT;
+                int step = ROW_HEIGHT / 3;
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+
+                int y = top;
+                int direction = 1;
+                for (int i = 0; i < moves; i++) {
+                    y += direction * step;
+                    if (y > bottom || y < top) {
+                        direction = -direction;
+                        y += 2 * direction * step;
+                    }
+                    mMoveEvent.setLocation(WIDTH / 2, y);
+                    mLayout.onTouchEvent(mMoveEvent);
+                }
+
+                count[0] = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+            }
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,322 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.test.InstrumentationTestCase;
+import android.view.View;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the layout passes a reorder session costs. Swaps only move views by translation,
+ * so the count must not grow with the number of swaps, in a single column or in a grid.
+ * Nor may it grow with the size of a batch of added or removed rows. Also checks that the
+ * scale transition leaves children outside the viewport alone, and that rows appended during
+ * a drag join the layout only once it ends, in step with the order model.
+ */
+public class DraggableImageLayoutTest extends InstrumentationTestCase {
+
+    private static final int ROW_COUNT = 20;
+
+    private static final int WIDTH = 400;
+
+    private DraggableImageLayout mLayout;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLayout = new DraggableImageLayout(getInstrumentation().getTargetContext());
+                mLayout.setOrientation(DraggableImageLayout.VERTICAL);
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    // rows of different heights
+                    mLayout.getOrderModel().add(new ImageItem(null, WIDTH, 100 + (i % 3) * 50, null));
+                }
+                layoutIfRequested();
+            }
+        });
+    }
+
+    public void testSwapsDoNotRequestLayout() {
+        final int[] passes = new int[2];
+        final boolean[] layoutRequested = new boolean[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                passes[0] = mLayout.getLayoutPassCount();
+
+                mLayout.beginReorder();
+                for (int i = 0; i < ROW_COUNT - 1; i++) {
+                    mLayout.moveSlot(i, i + 1);
+                    layoutRequested[0] |= mLayout.isLayoutRequested();
+                    layoutIfRequested();
+                }
+
+                passes[1] = mLayout.getLayoutPassCount();
+            }
+        });
+
+        assertFalse(layoutRequested[0]);
+        assertEquals(passes[0], passes[1]);
+    }
+
+    public void testCommitLaysOutOnce() {
+        final int[] passes = new int[2];
+        final View[] first = new View[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                first[0] = mLayout.getChildAt(0);
+                passes[0] = mLayout.getLayoutPassCount();
+
+                mLayout.beginReorder();
+                for (int i = 0; i < ROW_COUNT - 1; i++) {
+                    mLayout.moveSlot(i, i + 1);
+                }
+                mLayout.commitReorder();
+                layoutIfRequested();
+
+                passes[1] = mLayout.getLayoutPassCount();
+            }
+        });
+
+        assertEquals(passes[0] + 1, passes[1]);
+        assertSame(first[0], mLayout.getChildAt(ROW_COUNT - 1));
+        assertSame(first[0].getTag(), mLayout.getOrderModel().get(ROW_COUNT - 1));
+        assertEquals(0f, first[0].getTranslationY(), 0f);
+    }
+
+    public void testGridSwapsDoNotRequestLayout() {
+        final int columns = 4;
+        final int cell = WIDTH / columns;
+        final int[] passes = new int[2];
+        final boolean[] layoutRequested = new boolean[1];
+        final View[] first = new View[1];
+        final int[] firstBounds = new int[3];
+        final int[] fifthBounds = new int[2];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLayout.setGridColumnCount(columns);
+                mLayout.collapseChildren(1f / columns);
+                layoutIfRequested();
+
+                View fifth = mLayout.getChildAt(5);
+                fifthBounds[0] = fifth.getLeft();
+                fifthBounds[1] = fifth.getTop();
+
+                first[0] = mLayout.getChildAt(0);
+                passes[0] = mLayout.getLayoutPassCount();
+                mLayout.beginDrag(0);
+                // across a grid row and back part of the way, one cell at a time and by jumps
+                mLayout.moveSlot(0, 1);
+                mLayout.moveSlot(1, 9);
+                mLayout.moveSlot(9, 6);
+                layoutRequested[0] = mLayout.isLayoutRequested();
+                passes[1] = mLayout.getLayoutPassCount();
+
+                mLayout.commitReorder();
+                layoutIfRequested();
+                firstBounds[0] = first[0].getLeft();
+                firstBounds[1] = first[0].getTop();
+                firstBounds[2] = first[0].getHeight();
+            }
+        });
+
+        // rows are wider than tall, so they fill the cell width and are centred vertically
+        assertEquals(5 % columns * cell, fifthBounds[0]);
+        assertTrue(fifthBounds[1] >= 5 / columns * cell && fifthBounds[1] < (5 / columns + 1) * cell);
+
+        assertFalse(layoutRequested[0]);
+        assertEquals(passes[0], passes[1]);
+
+        assertSame(first[0], mLayout.getChildAt(6));
+        assertSame(first[0].getTag(), mLayout.getOrderModel().get(6));
+        assertEquals(6 % columns * cell, firstBounds[0]);
+        assertEquals(6 / columns * cell + (cell - firstBounds[2]) / 2, firstBounds[1]);
+    }
+
+    public void testBatchesLayOutOnceWhateverTheirSize() {
+        final int[] batchSizes = {1, 10, 100, 500};
+        final int[][] passes = new int[batchSizes.length][3];
+        final boolean[] inOrder = new boolean[batchSizes.length];
+        final int[] childCounts = new int[batchSizes.length];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int n = 0; n < batchSizes.length; n++) {
+                    List<ImageItem> items = new ArrayList<ImageItem>();
+                    for (int i = 0; i < batchSizes[n]; i++) {
+                        items.add(new ImageItem(null, WIDTH, 100, null));
+                    }
+
+                    int before = mLayout.getLayoutPassCount();
+                    mLayout.addImages(3, items);
+                    layoutIfRequested();
+                    passes[n][0] = mLayout.getLayoutPassCount() - before;
+
+                    inOrder[n] = mLayout.getOrderModel().get(3) == items.get(0)
+                            && mLayout.getChildAt(3).getTag() == items.get(0)
+                            && mLayout.getChildAt(2 + items.size()).getTag() == items.get(items.size() - 1);
+
+                    before = mLayout.getLayoutPassCount();
+                    mLayout.removeImages(items);
+                    layoutIfRequested();
+                    passes[n][1] = mLayout.getLayoutPassCount() - before;
+
+                    // streamed in one item at a time within a batch
+                    before = mLayout.getLayoutPassCount();
+                    mLayout.beginBatch();
+                    for (ImageItem item : items) {
+                        mLayout.getOrderModel().add(item);
+                        layoutIfRequested();
+                    }
+                    mLayout.endBatch();
+                    layoutIfRequested();
+                    passes[n][2] = mLayout.getLayoutPassCount() - before;
+
+                    mLayout.removeImages(items);
+                    layoutIfRequested();
+                    childCounts[n] = mLayout.getChildCount();
+                }
+            }
+        });
+
+        for (int n = 0; n < batchSizes.length; n++) {
+            assertEquals("add " + batchSizes[n], 1, passes[n][0]);
+            assertEquals("remove " + batchSizes[n], 1, passes[n][1]);
+            assertEquals("stream " + batchSizes[n], 1, passes[n][2]);
+            assertTrue(inOrder[n]);
+            assertEquals(ROW_COUNT, childCounts[n]);
+        }
+    }
+
+    public void testAppendDuringDragWaitsForTheDragToEnd() {
+        final List<ImageItem> appended = new ArrayList<ImageItem>();
+        for (int i = 0; i < 3; i++) {
+            appended.add(new ImageItem(null, WIDTH, 120, null));
+        }
+        final int[] countsDuringDrag = new int[2];
+        final boolean[] inSync = new boolean[1];
+        final boolean[] filled = new boolean[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLayout.beginDrag(0);
+                mLayout.addImages(appended);
+                Bitmap bitmap = Bitmap.createBitmap(WIDTH, 120, Bitmap.Config.ARGB_8888);
+                mLayout.fillImage(appended.get(1), RowBitmaps.create(bitmap, WIDTH, 120, null));
+                countsDuringDrag[0] = mLayout.getChildCount();
+                countsDuringDrag[1] = mLayout.getOrderModel().size();
+
+                mLayout.moveSlot(0, 2);
+                mLayout.commitReorder();
+                mLayout.endDrag();
+                layoutIfRequested();
+
+                boolean sync = mLayout.getChildCount() == mLayout.getOrderModel().size();
+                for (int i = 0; sync && i < mLayout.getChildCount(); i++) {
+                    sync = mLayout.getChildAt(i).getTag() == mLayout.getOrderModel().get(i);
+                }
+                inSync[0] = sync;
+                filled[0] = ((ImageView) mLayout.getChildAt(ROW_COUNT + 1)).getDrawable() != null;
+            }
+        });
+
+        assertEquals(ROW_COUNT, countsDuringDrag[0]);
+        assertEquals(ROW_COUNT, countsDuringDrag[1]);
+        assertTrue(inSync[0]);
+        assertEquals(ROW_COUNT + appended.size(), mLayout.getOrderModel().size());
+        assertSame(appended.get(0), mLayout.getOrderModel().get(ROW_COUNT));
+        assertTrue(filled[0]);
+    }
+
+    public void testInsertInTheMiddleDuringDragIsRejected() {
+        final boolean[] rejected = new boolean[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLayout.beginDrag(0);
+                try {
+                    mLayout.addImages(1, Collections.singletonList(new ImageItem(null, WIDTH, 120, null)));
+                } catch (IllegalStateException expected) {
+                    rejected[0] = true;
+                }
+                mLayout.endDrag();
+            }
+        });
+
+        assertTrue(rejected[0]);
+        assertEquals(ROW_COUNT, mLayout.getChildCount());
+    }
+
+    public void testScaleTransitionAnimatesOnlyVisibleChildren() {
+        final int[] activeCount = new int[1];
+        final float[] lastTranslation = new float[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ScaleTransition transition = new ScaleTransition(mLayout);
+                transition.reset();
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    transition.setChildStart(i, 20, 2);
+                }
+                transition.start(300, 0, 500);
+
+                activeCount[0] = transition.getActiveCount();
+                lastTranslation[0] = mLayout.getChildAt(ROW_COUNT - 1).getTranslationY();
+                transition.reset();
+            }
+        });
+
+        assertTrue(activeCount[0] > 0);
+        assertTrue(activeCount[0] < ROW_COUNT / 2);
+        assertEquals(0f, lastTranslation[0], 0f);
+    }
+
+    public void testScaleTransitionHasEndedWhenItsEndActionRuns() {
+        final boolean[] runningInEndAction = {true};
+        final int[] endActionRuns = new int[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final ScaleTransition transition = new ScaleTransition(mLayout);
+                transition.reset();
+                transition.setChildStart(0, 20, 2);
+                transition.setEndAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        endActionRuns[0]++;
+                        runningInEndAction[0] = transition.isRunning();
+                    }
+                });
+                transition.start(300, 0, 500);
+                // ends the transition at once
+                transition.reset();
+            }
+        });
+
+        assertEquals(1, endActionRuns[0]);
+        assertFalse(runningInEndAction[0]);
+    }
+
+    private void layoutIfRequested() {
+        if (mLayout.isLayoutRequested()) {
+            mLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+            mLayout.layout(0, 0, WIDTH, mLayout.getMeasuredHeight());
+        }
+    }
+}
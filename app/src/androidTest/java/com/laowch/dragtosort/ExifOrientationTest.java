@@ -0,0 +1,159 @@
+package com.laowch.dragtosort;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks the EXIF orientation parser on synthetic JPEG headers, and that the transform of
+ * every orientation shows a small stored picture upright.
+ */
+public class ExifOrientationTest extends TestCase {
+
+    /**
+     * Stored pixels, 3 wide and 2 tall.
+     */
+    private static final int[][] STORED = {
+            {1, 2, 3},
+            {4, 5, 6}
+    };
+
+    /**
+     * How STORED is shown for orientations 1 to 8, as defined by EXIF.
+     */
+    private static final int[][][] UPRIGHT = {
+            {{1, 2, 3}, {4, 5, 6}},
+            {{3, 2, 1}, {6, 5, 4}},
+            {{6, 5, 4}, {3, 2, 1}},
+            {{4, 5, 6}, {1, 2, 3}},
+            {{1, 4}, {2, 5}, {3, 6}},
+            {{4, 1}, {5, 2}, {6, 3}},
+            {{6, 3}, {5, 2}, {4, 1}},
+            {{3, 6}, {2, 5}, {1, 4}}
+    };
+
+    public void testReadsEveryOrientationInBothByteOrders() throws IOException {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            assertEquals(orientation, read(jpeg(app1(orientation, true))));
+            assertEquals(orientation, read(jpeg(app1(orientation, false))));
+        }
+    }
+
+    public void testSkipsOtherSegmentsBeforeExif() throws IOException {
+        final byte[] app0 = segment(0xe0, "JFIF\0".getBytes("US-ASCII"));
+        final byte[] xmp = segment(0xe1, "http://ns.adobe.com/xap/1.0/\0".getBytes("US-ASCII"));
+        assertEquals(ExifOrientation.ROTATE_90, read(jpeg(app0, xmp, app1(ExifOrientation.ROTATE_90, false))));
+    }
+
+    public void testNormalWithoutExif() throws IOException {
+        assertEquals(ExifOrientation.NORMAL, read(jpeg(segment(0xe0, new byte[10]))));
+        assertEquals(ExifOrientation.NORMAL, read(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+        assertEquals(ExifOrientation.NORMAL, read(new byte[0]));
+    }
+
+    public void testNormalForOutOfRangeValue() throws IOException {
+        assertEquals(ExifOrientation.NORMAL, read(jpeg(app1(9, true))));
+        assertEquals(ExifOrientation.NORMAL, read(jpeg(app1(0, false))));
+    }
+
+    public void testTruncatedSegmentThrows() {
+        final byte[] full = jpeg(app1(ExifOrientation.ROTATE_180, true));
+        try {
+            read(Arrays.copyOf(full, 20));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testSwapsDimensions() {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            assertEquals(orientation >= 5, ExifOrientation.swapsDimensions(orientation));
+        }
+    }
+
+    public void testTransformShowsEveryOrientationUpright() {
+        final int width = STORED[0].length;
+        final int height = STORED.length;
+        final float[] affine = new float[6];
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            ExifOrientation.getTransform(orientation, width, height, affine);
+            final int[][] expected = UPRIGHT[orientation - 1];
+            final int[][] shown = new int[expected.length][expected[0].length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    // map the pixel center, then take the pixel it lands in
+                    final float cx = x + 0.5f;
+                    final float cy = y + 0.5f;
+                    final int sx = (int) Math.floor(affine[0] * cx + affine[1] * cy + affine[2]);
+                    final int sy = (int) Math.floor(affine[3] * cx + affine[4] * cy + affine[5]);
+                    shown[sy][sx] = STORED[y][x];
+                }
+            }
+            assertTrue("orientation " + orientation, Arrays.deepEquals(expected, shown));
+        }
+    }
+
+    private static int read(final byte[] data) throws IOException {
+        return ExifOrientation.readOrientation(new ByteArrayInputStream(data));
+    }
+
+    private static byte[] jpeg(final byte[]... segments) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xff);
+        out.write(0xd8);
+        for (byte[] segment : segments) {
+            out.write(segment, 0, segment.length);
+        }
+        // start of scan, nothing past it is read
+        out.write(0xff);
+        out.write(0xda);
+        return out.toByteArray();
+    }
+
+    private static byte[] segment(final int marker, final byte[] payload) {
+        final byte[] segment = new byte[payload.length + 4];
+        segment[0] = (byte) 0xff;
+        segment[1] = (byte) marker;
+        segment[2] = (byte) ((payload.length + 2) >> 8);
+        segment[3] = (byte) (payload.length + 2);
+        System.arraycopy(payload, 0, segment, 4, payload.length);
+        return segment;
+    }
+
+    /**
+     * An APP1 segment with an IFD0 of two entries, the orientation second.
+     */
+    private static byte[] app1(final int orientation, final boolean littleEndian) {
+        final byte[] payload = new byte[6 + 8 + 2 + 2 * 12 + 4];
+        System.arraycopy(new byte[]{'E', 'x', 'i', 'f', 0, 0}, 0, payload, 0, 6);
+        final int tiff = 6;
+        payload[tiff] = payload[tiff + 1] = (byte) (littleEndian ? 'I' : 'M');
+        putShort(payload, tiff + 2, 42, littleEndian);
+        putInt(payload, tiff + 4, 8, littleEndian);
+        final int ifd = tiff + 8;
+        putShort(payload, ifd, 2, littleEndian);
+        // ImageWidth, a LONG we do not care about
+        putShort(payload, ifd + 2, 0x0100, littleEndian);
+        putShort(payload, ifd + 4, 4, littleEndian);
+        putInt(payload, ifd + 6, 1, littleEndian);
+        // Orientation, a SHORT
+        putShort(payload, ifd + 14, 0x0112, littleEndian);
+        putShort(payload, ifd + 16, 3, littleEndian);
+        putInt(payload, ifd + 18, 1, littleEndian);
+        putShort(payload, ifd + 22, orientation, littleEndian);
+        return segment(0xe1, payload);
+    }
+
+    private static void putInt(final byte[] data, final int offset, final int value, final boolean littleEndian) {
+        putShort(data, offset + (littleEndian ? 0 : 2), value & 0xffff, littleEndian);
+        putShort(data, offset + (littleEndian ? 2 : 0), value >>> 16, littleEndian);
+    }
+
+    private static void putShort(final byte[] data, final int offset, final int value, final boolean littleEndian) {
+        data[offset + (littleEndian ? 0 : 1)] = (byte) value;
+        data[offset + (littleEndian ? 1 : 0)] = (byte) (value >> 8);
+    }
+}
@@ -0,0 +1,67 @@
+package com.laowch.dragtosort;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.InstrumentationTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a saved order comes back in the same order, sized for the new display width,
+ * and without the images that only existed in memory.
+ */
+public class ImageListStateTest extends InstrumentationTestCase {
+
+    private static final int SAVED_WIDTH = 400;
+
+    private static final int RESTORED_WIDTH = 800;
+
+    public void testRestoresOrderAndGeometry() {
+        final List<ImageItem> items = new ArrayList<ImageItem>();
+        items.add(new ImageItem(Uri.parse("content://media/1"), SAVED_WIDTH, 300, null));
+        items.add(new ImageItem(null, SAVED_WIDTH, 200, null));
+        items.add(new ImageItem(Uri.parse("content://media/2"), SAVED_WIDTH, 100, null));
+        items.add(new ImageItem(Uri.parse("content://media/3"), SAVED_WIDTH, SAVED_WIDTH * 10, null, true));
+
+        final Bundle state = new Bundle();
+        ImageListState.save(items, state);
+
+        final ImagePipeline pipeline = new ImagePipeline(getInstrumentation().getTargetContext(), RESTORED_WIDTH,
+                null, null, null);
+        final List<ImageItem> restored = ImageListState.restore(state, pipeline);
+
+        assertEquals(3, restored.size());
+        assertEquals("content://media/1", restored.get(0).getUri().toString());
+        assertEquals("content://media/2", restored.get(1).getUri().toString());
+        assertEquals("content://media/3", restored.get(2).getUri().toString());
+
+        assertEquals(RESTORED_WIDTH, restored.get(0).getWidth());
+        assertEquals(600, restored.get(0).getHeight());
+        assertEquals(200, restored.get(1).getHeight());
+        assertFalse(restored.get(0).isTiled());
+        assertTrue(restored.get(2).isTiled());
+
+        assertEquals(pipeline.getCacheKey(restored.get(0).getUri()), restored.get(0).getCacheKey());
+        assertFalse(restored.get(0).isBound());
+    }
+
+    public void testPositionCountsSavedRowsOnly() {
+        final List<ImageItem> items = new ArrayList<ImageItem>();
+        items.add(new ImageItem(Uri.parse("content://media/1"), SAVED_WIDTH, 300, null));
+        items.add(new ImageItem(null, SAVED_WIDTH, 200, null));
+        items.add(new ImageItem(Uri.parse("content://media/2"), SAVED_WIDTH, 100, null));
+
+        final Bundle state = new Bundle();
+        ImageListState.save(items, 2, state);
+        assertEquals(1, ImageListState.getPosition(state));
+
+        assertEquals(0, ImageListState.getPosition(new Bundle()));
+    }
+
+    public void testEmptyStateRestoresNothing() {
+        final ImagePipeline pipeline = new ImagePipeline(getInstrumentation().getTargetContext(), RESTORED_WIDTH,
+                null, null, null);
+        assertTrue(ImageListState.restore(new Bundle(), pipeline).isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+package com.laowch.dragtosort;
+
+import android.content.ComponentCallbacks2;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the governor steps through its stages with the bytes held, leaves them with
+ * some slack, and follows trim callbacks for a while.
+ */
+public class MemoryGovernorTest extends TestCase {
+
+    private static final long BUDGET = 1000;
+
+    private MemoryGovernor mGovernor;
+
+    private long mBytes;
+
+    private int mChanges;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBytes = 0;
+        mChanges = 0;
+        mGovernor = new MemoryGovernor(BUDGET);
+        mGovernor.addByteSource(new MemoryGovernor.IByteSource() {
+            @Override
+            public long getByteCount() {
+                return mBytes;
+            }
+        });
+        mGovernor.addOnStageChangedListener(new MemoryGovernor.IOnStageChangedListener() {
+            @Override
+            public void onMemoryStageChanged(int stage) {
+                mChanges++;
+            }
+        });
+    }
+
+    public void testStagesFollowUsage() {
+        assertEquals(MemoryGovernor.STAGE_NORMAL, update(500));
+        assertEquals(MemoryGovernor.STAGE_NO_PREFETCH, update(700));
+        assertEquals(MemoryGovernor.STAGE_THUMBNAILS, update(850));
+        assertEquals(MemoryGovernor.STAGE_PAUSE_IMPORTS, update(990));
+        assertEquals(MemoryGovernor.STAGE_PAUSE_IMPORTS, update(2000));
+        assertEquals(2000, mGovernor.getUsedBytes());
+        assertEquals(3, mChanges);
+    }
+
+    public void testJumpsStraightToTheStageUsageCallsFor() {
+        assertEquals(MemoryGovernor.STAGE_PAUSE_IMPORTS, update(960));
+        assertEquals(1, mChanges);
+    }
+
+    public void testLeavesStagesOnlyWellBelowTheirThreshold() {
+        update(960);
+        // just below each threshold is not enough
+        assertEquals(MemoryGovernor.STAGE_PAUSE_IMPORTS, update(900));
+        assertEquals(MemoryGovernor.STAGE_THUMBNAILS, update(800));
+        assertEquals(MemoryGovernor.STAGE_THUMBNAILS, update(760));
+        assertEquals(MemoryGovernor.STAGE_NO_PREFETCH, update(700));
+        assertEquals(MemoryGovernor.STAGE_NORMAL, update(500));
+        assertEquals(960, mGovernor.getPeakBytes());
+    }
+
+    public void testDecodesInFlightCount() {
+        mBytes = 500;
+        mGovernor.onDecodeStarted(400);
+        assertEquals(MemoryGovernor.STAGE_THUMBNAILS, mGovernor.update(0));
+        assertEquals(400, mGovernor.getInFlightBytes());
+
+        mGovernor.onDecodeFinished(400);
+        assertEquals(MemoryGovernor.STAGE_NORMAL, mGovernor.update(0));
+        assertEquals(0, mGovernor.getInFlightBytes());
+    }
+
+    public void testTrimHoldsItsStageForAWhile() {
+        mBytes = 100;
+        assertEquals(MemoryGovernor.STAGE_THUMBNAILS,
+                mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, 1000));
+        assertEquals(MemoryGovernor.STAGE_THUMBNAILS, mGovernor.update(1000 + MemoryGovernor.TRIM_HOLD_MILLIS - 1));
+        assertEquals(MemoryGovernor.STAGE_NORMAL, mGovernor.update(1000 + MemoryGovernor.TRIM_HOLD_MILLIS));
+        assertEquals(1, mGovernor.getTrimCount());
+    }
+
+    public void testMilderTrimDoesNotLowerAHeldStage() {
+        mGovernor.onLowMemory(0);
+        assertEquals(MemoryGovernor.STAGE_PAUSE_IMPORTS,
+                mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, 10));
+    }
+
+    public void testBackgroundTrimLeavesTheStageToUsage() {
+        assertEquals(MemoryGovernor.STAGE_NORMAL,
+                mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, 0));
+        assertEquals(MemoryGovernor.STAGE_NORMAL,
+                mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE, 0));
+    }
+
+    public void testBudgetForMemoryClass() {
+        assertEquals(32L * 1024 * 1024, MemoryGovernor.getBudgetForMemoryClass(64));
+    }
+
+    private int update(final long bytes) {
+        mBytes = bytes;
+        return mGovernor.update(0);
+    }
+}
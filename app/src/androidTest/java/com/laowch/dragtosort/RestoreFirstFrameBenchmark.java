@@ -0,0 +1,74 @@
+package com.laowch.dragtosort;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logs what a restore costs on the main thread before the first frame, for growing list
+ * sizes: turning the saved state back into items, adding the rows around the saved position
+ * to a layout and the first measure and layout. Checks that the rows in that first frame do
+ * not grow with the list, the others are only added after it.
+ */
+public class RestoreFirstFrameBenchmark extends InstrumentationTestCase {
+
+    private static final String TAG = "RestoreFirstFrame";
+
+    private static final int[] ROW_COUNTS = {10, 100, 1000};
+
+    private static final int WIDTH = 1080;
+
+    public void testFirstFrameDoesNotGrowWithTheList() {
+        // warm up class loading and the view constructors
+        restoreAndLayout(ROW_COUNTS[0]);
+
+        long largeListRows = -1;
+        for (final int rowCount : ROW_COUNTS) {
+            final long[] result = restoreAndLayout(rowCount);
+            Log.i(TAG, rowCount + " rows: " + result[0] / 1000 + " us, " + result[1] + " rows in the first frame");
+            if (rowCount > ROW_COUNTS[0]) {
+                if (largeListRows < 0) {
+                    largeListRows = result[1];
+                }
+                assertEquals(largeListRows, result[1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the nanoseconds spent and the number of rows in the first frame.
+     */
+    private long[] restoreAndLayout(final int rowCount) {
+        final List<ImageItem> items = new ArrayList<ImageItem>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            items.add(new ImageItem(Uri.parse("content://media/" + i), WIDTH, 600 + (i % 3) * 200, null));
+        }
+        final Bundle state = new Bundle();
+        ImageListState.save(items, rowCount / 2, state);
+
+        final long[] result = new long[2];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final ImagePipeline pipeline = new ImagePipeline(getInstrumentation().getTargetContext(), WIDTH,
+                        null, null, null);
+                final DraggableImageLayout layout = new DraggableImageLayout(getInstrumentation().getTargetContext());
+                layout.setOrientation(DraggableImageLayout.VERTICAL);
+
+                final long start = System.nanoTime();
+                layout.restoreImages(ImageListState.restore(state, pipeline), ImageListState.getPosition(state));
+                layout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+                layout.layout(0, 0, layout.getMeasuredWidth(), layout.getMeasuredHeight());
+                result[0] = System.nanoTime() - start;
+                result[1] = layout.getChildCount();
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+package com.laowch.dragtosort;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the decode sizing against common camera resolutions, using dimensions only.
+ */
+public class SampleSizeUtilsTest extends TestCase {
+
+    private static final int TARGET_WIDTH = 1080;
+
+    private static final int[][] CAMERA_SIZES = {
+            {4000, 3000},   // 12 MP
+            {3000, 4000},   // 12 MP portrait
+            {5472, 3648},   // 20 MP
+            {8000, 6000},   // 48 MP
+            {9248, 6936},   // 64 MP
+            {1080, 1920},   // already at target width
+            {640, 480},     // smaller than target
+    };
+
+    public void testSampleSizeIsPowerOfTwo() {
+        for (int[] size : CAMERA_SIZES) {
+            int inSampleSize = SampleSizeUtils.calculateInSampleSize(size[0], size[1], TARGET_WIDTH, 0);
+            assertTrue(inSampleSize > 0);
+            assertEquals(0, inSampleSize & (inSampleSize - 1));
+        }
+    }
+
+    public void testSampledWidthNeverDropsBelowTarget() {
+        for (int[] size : CAMERA_SIZES) {
+            int inSampleSize = SampleSizeUtils.calculateInSampleSize(size[0], size[1], TARGET_WIDTH, 0);
+            int sampledWidth = SampleSizeUtils.sampledSize(size[0], inSampleSize);
+            assertTrue(sampledWidth >= Math.min(TARGET_WIDTH, size[0]));
+            if (size[0] >= TARGET_WIDTH) {
+                assertTrue(sampledWidth < TARGET_WIDTH * 2);
+            }
+        }
+    }
+
+    public void testRequestedHeightLimitsSampling() {
+        assertEquals(4, SampleSizeUtils.calculateInSampleSize(8000, 6000, 1080, 0));
+        assertEquals(2, SampleSizeUtils.calculateInSampleSize(8000, 6000, 1080, 2000));
+    }
+
+    public void testInvalidBoundsFallBackToNoSampling() {
+        assertEquals(1, SampleSizeUtils.calculateInSampleSize(0, 0, TARGET_WIDTH, 0));
+        assertEquals(1, SampleSizeUtils.calculateInSampleSize(4000, 3000, 0, 0));
+    }
+
+    public void testPeakEstimateIsFarBelowFullDecode() {
+        long fullBytes = 8000L * 6000 * SampleSizeUtils.BYTES_PER_PIXEL_ARGB_8888;
+        long peakBytes = SampleSizeUtils.estimatePeakBytes(8000, 6000, TARGET_WIDTH,
+                SampleSizeUtils.BYTES_PER_PIXEL_ARGB_8888);
+        assertTrue(peakBytes * 8 < fullBytes);
+    }
+}
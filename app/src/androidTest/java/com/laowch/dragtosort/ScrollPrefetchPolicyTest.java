@@ -0,0 +1,55 @@
+package com.laowch.dragtosort;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the prefetch distance follows the scroll velocity and direction.
+ */
+public class ScrollPrefetchPolicyTest extends TestCase {
+
+    private static final int VIEWPORT = 1000;
+
+    public void testIdleLooksHalfAViewportDown() {
+        ScrollPrefetchPolicy policy = new ScrollPrefetchPolicy();
+        assertEquals(1, policy.getDirection());
+        assertEquals(VIEWPORT / 2, policy.getPrefetchDistance(VIEWPORT, 0));
+    }
+
+    public void testFastScrollLooksFurther() {
+        ScrollPrefetchPolicy slow = new ScrollPrefetchPolicy();
+        ScrollPrefetchPolicy fast = new ScrollPrefetchPolicy();
+        for (int i = 0; i <= 10; i++) {
+            slow.onScroll(i * 16, i * 16);
+            fast.onScroll(i * 96, i * 16);
+        }
+
+        assertEquals(1f, slow.getVelocity(160), 0.01f);
+        assertEquals(6f, fast.getVelocity(160), 0.1f);
+        assertEquals(VIEWPORT / 2, slow.getPrefetchDistance(VIEWPORT, 160));
+        assertTrue(fast.getPrefetchDistance(VIEWPORT, 160) > 2 * VIEWPORT);
+        assertTrue(fast.getPrefetchDistance(VIEWPORT, 160) <= 3 * VIEWPORT);
+    }
+
+    public void testDirectionFollowsLastScrollAndSurvivesIdle() {
+        ScrollPrefetchPolicy policy = new ScrollPrefetchPolicy();
+        policy.onScroll(5000, 0);
+        policy.onScroll(4900, 16);
+        policy.onScroll(4800, 32);
+
+        assertEquals(-1, policy.getDirection());
+        assertTrue(policy.getVelocity(32) < 0);
+
+        // long after the last event the velocity is gone but the direction is kept
+        assertEquals(0f, policy.getVelocity(32 + ScrollPrefetchPolicy.IDLE_MILLIS + 1), 0f);
+        assertEquals(-1, policy.getDirection());
+    }
+
+    public void testPauseStartsNewGesture() {
+        ScrollPrefetchPolicy policy = new ScrollPrefetchPolicy();
+        policy.onScroll(0, 0);
+        policy.onScroll(1000, 16);
+        policy.onScroll(1010, 16 + ScrollPrefetchPolicy.IDLE_MILLIS + 50);
+
+        assertEquals(0f, policy.getVelocity(16 + ScrollPrefetchPolicy.IDLE_MILLIS + 50), 0f);
+    }
+}
@@ -0,0 +1,77 @@
+package com.laowch.dragtosort;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks target slot resolution against a linear scan, for rows of very different heights,
+ * and the direct cell lookup of the grid.
+ */
+public class SlotSearchTest extends TestCase {
+
+    private static final int[] HEIGHTS = {40, 600, 90, 90, 1800, 30, 250, 250, 75, 900};
+
+    private int[] mSlotTops;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSlotTops = new int[HEIGHTS.length + 1];
+        mSlotTops[0] = 10;
+        for (int i = 0; i < HEIGHTS.length; i++) {
+            mSlotTops[i + 1] = mSlotTops[i] + HEIGHTS[i];
+        }
+    }
+
+    public void testNeighbourRuleIsKept() {
+        // just past the middle of the row below moves down by one, just before it does not
+        int middleOfNext = mSlotTops[3] + HEIGHTS[3] / 2;
+        assertEquals(3, SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, 2, middleOfNext + 1));
+        assertEquals(2, SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, 2, middleOfNext));
+    }
+
+    public void testJumpsSeveralSlotsInOneEvent() {
+        int y = mSlotTops[7] + HEIGHTS[7] / 2 + 1;
+        assertEquals(7, SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, 0, y));
+        assertEquals(0, SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, 9, mSlotTops[0]));
+    }
+
+    public void testClampsOutsideTheList() {
+        assertEquals(0, SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, 4, -1000));
+        assertEquals(HEIGHTS.length - 1, SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, 4, 100000));
+    }
+
+    public void testMatchesLinearScan() {
+        for (int mobile = 0; mobile < HEIGHTS.length; mobile++) {
+            for (int y = mSlotTops[0] - 50; y < mSlotTops[HEIGHTS.length] + 50; y += 7) {
+                assertEquals("mobile " + mobile + " y " + y, linearScan(mobile, y),
+                        SlotSearch.findTargetSlot(mSlotTops, HEIGHTS.length, mobile, y));
+            }
+        }
+    }
+
+    public void testGridCellUnderTheFinger() {
+        // 3 columns of 100 x 100 starting at 10, 20, 10 slots
+        assertEquals(0, SlotSearch.findGridSlot(10, 20, 10, 20, 100, 100, 3, 10));
+        assertEquals(1, SlotSearch.findGridSlot(110, 119, 10, 20, 100, 100, 3, 10));
+        assertEquals(5, SlotSearch.findGridSlot(309, 120, 10, 20, 100, 100, 3, 10));
+        assertEquals(9, SlotSearch.findGridSlot(50, 320, 10, 20, 100, 100, 3, 10));
+    }
+
+    public void testGridClampsOutsideTheCells() {
+        assertEquals(0, SlotSearch.findGridSlot(-500, -500, 10, 20, 100, 100, 3, 10));
+        assertEquals(2, SlotSearch.findGridSlot(5000, 50, 10, 20, 100, 100, 3, 10));
+        // below the last, partly filled row
+        assertEquals(9, SlotSearch.findGridSlot(250, 5000, 10, 20, 100, 100, 3, 10));
+        assertEquals(9, SlotSearch.findGridSlot(250, 320, 10, 20, 100, 100, 3, 10));
+    }
+
+    private int linearScan(int mobile, int y) {
+        int target = 0;
+        for (int i = 0; i < HEIGHTS.length; i++) {
+            if (i != mobile && mSlotTops[i] + HEIGHTS[i] / 2 < y) {
+                target++;
+            }
+        }
+        return target;
+    }
+}
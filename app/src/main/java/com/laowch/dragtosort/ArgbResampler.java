@@ -0,0 +1,322 @@
+package com.laowch.dragtosort;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resamples ARGB pixels held in int arrays, with area averaging or a Lanczos filter
+ * instead of the bilinear filter of a Canvas draw, which aliases on large downscales.
+ * Works on plain arrays so it behaves the same on and off the device.
+ * <p/>
+ * The filter is applied in two separable passes per output row: the contributing source
+ * rows are summed into per-channel float rows, then each output pixel sums its taps along
+ * that row. Filter taps and weights are tabulated once per call. The vertical pass runs
+ * over contiguous arrays without branches so the JIT can vectorize it.
+ * <p/>
+ * Output rows are cut into tiles that the calling thread and up to threadCount - 1
+ * executor threads claim one at a time until none are left. The caller waits for the tiles
+ * to be finished, not for the helpers to run, so it never depends on the executor having a
+ * free thread and may itself be one of the executor's threads. Channels are filtered
+ * independently, so translucent images should be premultiplied.
+ */
+public class ArgbResampler {
+
+    /**
+     * Averages every source pixel an output pixel covers, weighted by the covered area.
+     */
+    public static final int FILTER_AREA = 0;
+
+    /**
+     * Windowed sinc with three lobes, sharper than area averaging on downscales and the
+     * usual choice for upscales.
+     */
+    public static final int FILTER_LANCZOS3 = 1;
+
+    private static final int TILE_ROWS = 16;
+
+    private final int mFilter;
+
+    private final Executor mExecutor;
+
+    private final int mThreadCount;
+
+
+    /**
+     * Runs on the calling thread only.
+     */
+    public ArgbResampler(final int filter) {
+        this(filter, null, 1);
+    }
+
+    /**
+     * @param executor    runs the extra workers, or null to stay on the calling thread
+     * @param threadCount workers including the calling thread
+     */
+    public ArgbResampler(final int filter, final Executor executor, final int threadCount) {
+        if (filter != FILTER_AREA && filter != FILTER_LANCZOS3) {
+            throw new IllegalArgumentException("Unknown filter " + filter);
+        }
+        this.mFilter = filter;
+        this.mExecutor = executor;
+        this.mThreadCount = executor != null ? Math.max(1, threadCount) : 1;
+    }
+
+    /**
+     * Scales the whole of src to dstWidth x dstHeight.
+     */
+    public void resample(final int[] src, final int srcWidth, final int srcHeight,
+                         final int[] dst, final int dstWidth, final int dstHeight) {
+        resample(src, srcWidth, srcHeight, 0, 0, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+    }
+
+    /**
+     * Scales the part left, top, right, bottom of src to dstWidth x dstHeight, e.g. the
+     * rectangle from {@link CenterCropUtils#computeSourceRect}. Lanczos taps near the edges
+     * of that part may read the pixels just outside it.
+     *
+     * @param dst receives dstWidth x dstHeight pixels, row by row
+     */
+    public void resample(final int[] src, final int srcWidth, final int srcHeight,
+                         final int left, final int top, final int right, final int bottom,
+                         final int[] dst, final int dstWidth, final int dstHeight) {
+        if (dstWidth <= 0 || dstHeight <= 0 || right <= left || bottom <= top) {
+            return;
+        }
+
+        final Taps columns = new Taps(mFilter, left, right, srcWidth, dstWidth);
+        final Taps rows = new Taps(mFilter, top, bottom, srcHeight, dstHeight);
+
+        final Job job = new Job(src, srcWidth, dst, dstWidth, dstHeight, columns, rows);
+        final int helpers = Math.min(mThreadCount, job.mTileCount) - 1;
+        if (helpers <= 0) {
+            job.work();
+            if (job.mFailure != null) {
+                throw job.mFailure;
+            }
+            return;
+        }
+
+        for (int i = 0; i < helpers; i++) {
+            mExecutor.execute(job);
+        }
+        // claims every tile no helper got to, helpers that start later find none and exit
+        job.work();
+        try {
+            job.mTilesLeft.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (job.mFailure != null) {
+            throw job.mFailure;
+        }
+    }
+
+    /**
+     * Source indices and weights of every output index along one axis, taps per output
+     * index, indices clamped to the image.
+     */
+    static final class Taps {
+
+        final int mTapCount;
+
+        final int[] mIndex;
+
+        final float[] mWeight;
+
+        final int mMinIndex;
+
+        final int mMaxIndex;
+
+
+        Taps(final int filter, final int start, final int end, final int srcSize, final int dstSize) {
+            final float scale = (float) (end - start) / dstSize;
+            // wider kernels on downscales, so every source pixel contributes
+            final float support = filter == FILTER_AREA ? Math.max(scale, 1f) / 2 : 3 * Math.max(scale, 1f);
+            mTapCount = (int) Math.ceil(support * 2) + 1;
+            mIndex = new int[dstSize * mTapCount];
+            mWeight = new float[dstSize * mTapCount];
+
+            int minIndex = srcSize;
+            int maxIndex = 0;
+            for (int i = 0; i < dstSize; i++) {
+                final float center = start + (i + 0.5f) * scale;
+                final int first = (int) Math.floor(center - support);
+                float sum = 0;
+                for (int t = 0; t < mTapCount; t++) {
+                    final int index = first + t;
+                    final float weight = filter == FILTER_AREA
+                            ? areaWeight(index, center - support, center + support)
+                            : lanczos3((index + 0.5f - center) / Math.max(scale, 1f));
+                    final int clamped = index < 0 ? 0 : index >= srcSize ? srcSize - 1 : index;
+                    mIndex[i * mTapCount + t] = clamped;
+                    mWeight[i * mTapCount + t] = weight;
+                    sum += weight;
+                    if (weight != 0) {
+                        minIndex = Math.min(minIndex, clamped);
+                        maxIndex = Math.max(maxIndex, clamped);
+                    }
+                }
+                if (sum != 0) {
+                    for (int t = 0; t < mTapCount; t++) {
+                        mWeight[i * mTapCount + t] /= sum;
+                    }
+                }
+            }
+            mMinIndex = Math.min(minIndex, maxIndex);
+            mMaxIndex = maxIndex;
+
+            // taps without weight may point anywhere, keep them inside the used range
+            for (int t = 0; t < mIndex.length; t++) {
+                if (mWeight[t] == 0) {
+                    mIndex[t] = mMinIndex;
+                }
+            }
+        }
+
+        /**
+         * Part of source pixel index, which spans index to index + 1, inside from..to.
+         */
+        private static float areaWeight(final int index, final float from, final float to) {
+            return Math.max(0f, Math.min(index + 1f, to) - Math.max((float) index, from));
+        }
+
+        private static float lanczos3(final float x) {
+            if (x == 0) {
+                return 1;
+            }
+            if (x <= -3 || x >= 3) {
+                return 0;
+            }
+            final double px = Math.PI * x;
+            return (float) (3 * Math.sin(px) * Math.sin(px / 3) / (px * px));
+        }
+    }
+
+    /**
+     * One resample call. The calling thread and every helper claim tiles of output rows
+     * until none are left.
+     */
+    private static final class Job implements Runnable {
+
+        private final int[] mSrc;
+        private final int mSrcWidth;
+        private final int[] mDst;
+        private final int mDstWidth;
+        private final int mDstHeight;
+        private final Taps mColumns;
+        private final Taps mRows;
+
+        final int mTileCount;
+
+        private final AtomicInteger mNextTile = new AtomicInteger();
+
+        /**
+         * Counted down once per finished tile, whichever thread finished it.
+         */
+        final CountDownLatch mTilesLeft;
+
+        volatile RuntimeException mFailure;
+
+
+        Job(int[] src, int srcWidth, int[] dst, int dstWidth, int dstHeight, Taps columns, Taps rows) {
+            this.mSrc = src;
+            this.mSrcWidth = srcWidth;
+            this.mDst = dst;
+            this.mDstWidth = dstWidth;
+            this.mDstHeight = dstHeight;
+            this.mColumns = columns;
+            this.mRows = rows;
+            this.mTileCount = (dstHeight + TILE_ROWS - 1) / TILE_ROWS;
+            this.mTilesLeft = new CountDownLatch(mTileCount);
+        }
+
+        /**
+         * Runs on a helper thread.
+         */
+        @Override
+        public void run() {
+            work();
+        }
+
+        void work() {
+            final int width = mColumns.mMaxIndex - mColumns.mMinIndex + 1;
+            float[] a = null;
+            float[] r = null;
+            float[] g = null;
+            float[] b = null;
+
+            int tile;
+            while ((tile = mNextTile.getAndIncrement()) < mTileCount) {
+                try {
+                    if (a == null) {
+                        a = new float[width];
+                        r = new float[width];
+                        g = new float[width];
+                        b = new float[width];
+                    }
+                    final int end = Math.min(mDstHeight, (tile + 1) * TILE_ROWS);
+                    for (int y = tile * TILE_ROWS; y < end; y++) {
+                        sumRows(y, a, r, g, b, width);
+                        sumColumns(y, a, r, g, b);
+                    }
+                } catch (RuntimeException ex) {
+                    mFailure = ex;
+                } finally {
+                    mTilesLeft.countDown();
+                }
+            }
+        }
+
+        /**
+         * Weighted sum of the source rows that output row y covers, per channel.
+         */
+        private void sumRows(final int y, final float[] a, final float[] r, final float[] g, final float[] b, final int width) {
+            for (int x = 0; x < width; x++) {
+                a[x] = r[x] = g[x] = b[x] = 0;
+            }
+
+            final int taps = mRows.mTapCount;
+            for (int t = 0; t < taps; t++) {
+                final float weight = mRows.mWeight[y * taps + t];
+                if (weight == 0) {
+                    continue;
+                }
+                final int offset = mRows.mIndex[y * taps + t] * mSrcWidth + mColumns.mMinIndex;
+                for (int x = 0; x < width; x++) {
+                    final int pixel = mSrc[offset + x];
+                    a[x] += weight * (pixel >>> 24);
+                    r[x] += weight * ((pixel >> 16) & 0xff);
+                    g[x] += weight * ((pixel >> 8) & 0xff);
+                    b[x] += weight * (pixel & 0xff);
+                }
+            }
+        }
+
+        /**
+         * Filters the summed row along x into output row y.
+         */
+        private void sumColumns(final int y, final float[] a, final float[] r, final float[] g, final float[] b) {
+            final int taps = mColumns.mTapCount;
+            final int min = mColumns.mMinIndex;
+            final int rowOffset = y * mDstWidth;
+            for (int x = 0; x < mDstWidth; x++) {
+                float sa = 0, sr = 0, sg = 0, sb = 0;
+                for (int t = x * taps, last = t + taps; t < last; t++) {
+                    final float weight = mColumns.mWeight[t];
+                    final int index = mColumns.mIndex[t] - min;
+                    sa += weight * a[index];
+                    sr += weight * r[index];
+                    sg += weight * g[index];
+                    sb += weight * b[index];
+                }
+                mDst[rowOffset + x] = (channel(sa) << 24) | (channel(sr) << 16) | (channel(sg) << 8) | channel(sb);
+            }
+        }
+
+        private static int channel(final float value) {
+            final int rounded = (int) (value + 0.5f);
+            return rounded < 0 ? 0 : rounded > 255 ? 255 : rounded;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.laowch.dragtosort;
+
+/**
+ * Speed of the auto-scroll while a dragged item is held near the top or bottom edge of
+ * the viewport. The speed grows linearly with how deep the item reaches into the edge
+ * zone, so the user controls it by how far they push.
+ */
+public class AutoScrollUtils {
+
+    /**
+     * @param itemTop        top of the dragged item
+     * @param itemBottom     bottom of the dragged item
+     * @param viewportTop    top of the visible part of the list, same coordinates
+     * @param viewportBottom bottom of the visible part of the list
+     * @param edgeZone       height of the zone along each edge that starts the scroll
+     * @param maxSpeed       speed once the item reaches the edge itself, in pixels per second
+     * @return pixels per second, negative towards the top, or 0 outside both zones
+     */
+    public static float computeScrollSpeed(final int itemTop, final int itemBottom,
+                                           final int viewportTop, final int viewportBottom,
+                                           final int edgeZone, final float maxSpeed) {
+        if (edgeZone <= 0) {
+            return 0;
+        }
+        final float topDepth = depth(viewportTop + edgeZone - itemTop, edgeZone);
+        final float bottomDepth = depth(itemBottom - (viewportBottom - edgeZone), edgeZone);
+
+        if (topDepth == 0 && bottomDepth == 0) {
+            return 0;
+        }
+        return topDepth >= bottomDepth ? -topDepth * maxSpeed : bottomDepth * maxSpeed;
+    }
+
+    private static float depth(final int into, final int edgeZone) {
+        if (into <= 0) {
+            return 0;
+        }
+        return into >= edgeZone ? 1 : (float) into / edgeZone;
+    }
+}
@@ -0,0 +1,33 @@
+package com.laowch.dragtosort;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names worker threads and drops them to background priority so image work never
+ * competes with the UI thread.
+ */
+public class BackgroundThreadFactory implements ThreadFactory {
+
+    private final String mName;
+
+    private final AtomicInteger mCount = new AtomicInteger(1);
+
+
+    public BackgroundThreadFactory(String pName) {
+        this.mName = pName;
+    }
+
+    @Override
+    public Thread newThread(final Runnable pRunnable) {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                pRunnable.run();
+            }
+        }, mName + " #" + mCount.getAndIncrement());
+    }
+}
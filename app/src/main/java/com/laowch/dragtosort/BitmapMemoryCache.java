@@ -0,0 +1,98 @@
+package com.laowch.dragtosort;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.LruCache;
+
+/**
+ * Process wide LRU cache of decoded bitmaps, bounded by their real byte count.
+ * <p/>
+ * Entries are keyed by {@link #key(Uri, int, int, String)} so the same uri decoded for a
+ * different size or transform is cached separately. Hit, miss and eviction counters are
+ * the ones kept by {@link LruCache}: {@link #hitCount()}, {@link #missCount()} and
+ * {@link #evictionCount()}; {@link #trimCount()} counts memory trims on top of that.
+ */
+public class BitmapMemoryCache extends LruCache<String, Bitmap> implements MemoryGovernor.IByteSource {
+
+    public static final float DEFAULT_HEAP_FRACTION = 0.125f;
+
+    /**
+     * Scaled to the requested width and turned upright. Renamed from "fitWidth" when the
+     * EXIF orientation started being applied, so entries written before are never served.
+     */
+    public static final String TRANSFORM_FIT_WIDTH = "fitWidthUpright";
+
+    private static BitmapMemoryCache sInstance;
+
+    private int mTrimCount = 0;
+
+
+    /**
+     * @param heapFraction share of {@link Runtime#maxMemory()} the cache may hold, 0 to 1.
+     */
+    public BitmapMemoryCache(final float heapFraction) {
+        super(Math.max(1, (int) (Runtime.getRuntime().maxMemory() * heapFraction)));
+    }
+
+    public static synchronized BitmapMemoryCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapMemoryCache(DEFAULT_HEAP_FRACTION);
+        }
+        return sInstance;
+    }
+
+    /**
+     * A height of 0 means the height follows the source aspect ratio.
+     */
+    public static String key(final Uri uri, final int width, final int height, final String transform) {
+        return uri + "#" + width + "x" + height + "#" + transform;
+    }
+
+    @Override
+    protected int sizeOf(final String key, final Bitmap value) {
+        return value.getByteCount();
+    }
+
+    /**
+     * Gives memory back according to a {@link ComponentCallbacks2} trim level.
+     */
+    public void onTrimMemory(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimTo(maxSize() / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(maxSize() / 2);
+        } else {
+            return;
+        }
+
+        synchronized (this) {
+            mTrimCount++;
+        }
+    }
+
+    @Override
+    public long getByteCount() {
+        return size();
+    }
+
+    public synchronized int trimCount() {
+        return mTrimCount;
+    }
+
+    /**
+     * Drops least recently used entries until at most targetSize bytes remain.
+     * {@link LruCache#trimToSize(int)} is only public from API 17.
+     */
+    private void trimTo(final int targetSize) {
+        // snapshot() iterates from least to most recently used
+        for (String key : snapshot().keySet()) {
+            if (size() <= targetSize) {
+                break;
+            }
+            remove(key);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps that are no longer displayed, bucketed by allocation size, for
+ * reuse as {@link android.graphics.BitmapFactory.Options#inBitmap} and as the target of
+ * {@link BitmapUtils#resizeBitmap}.
+ * <p/>
+ * From KitKat on any pooled bitmap that is large enough can be reconfigured to the
+ * requested size. Before that the decoder only accepts an exact size match without
+ * subsampling, so lookups fall back to exact matches. The pool never holds more than its
+ * byte cap; bitmaps pushed out are recycled.
+ */
+public class BitmapPool implements MemoryGovernor.IByteSource {
+
+    private static final int DEFAULT_HEAP_DIVISOR = 16;
+
+    /**
+     * Don't hand out a bitmap more than this many times bigger than what was asked for.
+     */
+    private static final int MAX_OVERSIZE_FACTOR = 2;
+
+    private static BitmapPool sInstance;
+
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+
+    private final int mMaxSize;
+
+    private int mSize = 0;
+
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private int mPutCount = 0;
+    private int mEvictionCount = 0;
+
+
+    public BitmapPool(int pMaxSize) {
+        this.mMaxSize = pMaxSize;
+    }
+
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool((int) (Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVISOR));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns a pooled bitmap already set to width x height and config, or null. Its
+     * pixels are undefined.
+     */
+    public synchronized Bitmap get(final int width, final int height, final Bitmap.Config config) {
+        final int needed = width * height * getBytesPerPixel(config);
+
+        final Bitmap bitmap;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            bitmap = takeAtLeast(needed);
+            if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config)) {
+                bitmap.reconfigure(width, height, config);
+            }
+        } else {
+            bitmap = takeExact(needed, width, height, config);
+        }
+
+        if (bitmap != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Like {@link #get(int, int, Bitmap.Config)}, for use as inBitmap of a decode with the
+     * given sample size. Returns null where the platform could not reuse a bitmap anyway.
+     */
+    public synchronized Bitmap getForDecode(final int width, final int height, final int inSampleSize, final Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && inSampleSize != 1) {
+            mMissCount++;
+            return null;
+        }
+        return get(width, height, config);
+    }
+
+    /**
+     * Hands bitmap to the pool. The caller must not touch it afterwards. Immutable or
+     * recycled bitmaps are ignored since they cannot be reused.
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        final int size = getByteSize(bitmap);
+        if (size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        LinkedList<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        mSize += size;
+        mPutCount++;
+
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Recycles pooled bitmaps, largest first, until at most maxSize bytes remain.
+     */
+    public synchronized void trimToSize(final int maxSize) {
+        while (mSize > maxSize && !mBuckets.isEmpty()) {
+            final Map.Entry<Integer, LinkedList<Bitmap>> largest = mBuckets.lastEntry();
+            final Bitmap bitmap = largest.getValue().removeFirst();
+            if (largest.getValue().isEmpty()) {
+                mBuckets.remove(largest.getKey());
+            }
+            mSize -= largest.getKey();
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    public void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public long getByteCount() {
+        return size();
+    }
+
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    public synchronized float getHitRate() {
+        final int requests = mHitCount + mMissCount;
+        return requests == 0 ? 0 : (float) mHitCount / requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[size=" + mSize + ",maxSize=" + mMaxSize + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",puts=" + mPutCount + ",evictions=" + mEvictionCount + "]";
+    }
+
+    private Bitmap takeAtLeast(final int needed) {
+        final Integer size = mBuckets.ceilingKey(needed);
+        if (size == null || size > needed * MAX_OVERSIZE_FACTOR) {
+            return null;
+        }
+        return removeFrom(size, 0);
+    }
+
+    private Bitmap takeExact(final int needed, final int width, final int height, final Bitmap.Config config) {
+        final LinkedList<Bitmap> bucket = mBuckets.get(needed);
+        if (bucket == null) {
+            return null;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            final Bitmap candidate = bucket.get(i);
+            if (candidate.getWidth() == width && candidate.getHeight() == height && candidate.getConfig() == config) {
+                return removeFrom(needed, i);
+            }
+        }
+        return null;
+    }
+
+    private Bitmap removeFrom(final int size, final int index) {
+        final LinkedList<Bitmap> bucket = mBuckets.get(size);
+        final Bitmap bitmap = bucket.remove(index);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(size);
+        }
+        mSize -= size;
+        return bitmap;
+    }
+
+    public static int getByteSize(final Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int getBytesPerPixel(final Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -1,27 +1,277 @@
 package com.laowch.dragtosort;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
 
 /**
  * Created by lao on 14/12/20.
  */
 public class BitmapUtils {
 
+    private static final Paint RESIZE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    /**
+     * Decodes the image behind fileDescriptor so that it ends up requestedWidth wide and
+     * upright, without ever holding the full resolution pixels. The EXIF orientation and
+     * bounds are read first, the decoder subsamples by a power of two, and the remaining
+     * scale and the rotation are applied in one draw. JPEGs have no alpha, so they decode
+     * to RGB_565 at half the memory. Pixel memory is taken from pool where the platform
+     * allows it, and the subsampled intermediate is given back to it.
+     * <p/>
+     * The decoder puts a seekable descriptor back where it found it, so only reading the
+     * orientation needs a rewind. A descriptor that cannot seek, such as a pipe, is used up
+     * by every pass and is opened again through reopener for the next one.
+     */
+    public static Bitmap decodeSampledBitmap(final FileDescriptor fileDescriptor, final int requestedWidth,
+                                             final BitmapPool pool, final IReopener reopener) throws IOException {
+        final int orientation = readOrientation(fileDescriptor);
+        final boolean seekable = rewind(fileDescriptor);
+        FileDescriptor descriptor = seekable ? fileDescriptor : reopener.reopen();
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFileDescriptor(descriptor, null, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        if (!seekable) {
+            descriptor = reopener.reopen();
+        }
+
+        final boolean swap = ExifOrientation.swapsDimensions(orientation);
+        options.inSampleSize = SampleSizeUtils.calculateInSampleSize(swap ? options.outHeight : options.outWidth,
+                swap ? options.outWidth : options.outHeight, requestedWidth, 0);
+        options.inPreferredConfig = "image/jpeg".equals(options.outMimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = pool.getForDecode(SampleSizeUtils.sampledSize(options.outWidth, options.inSampleSize),
+                SampleSizeUtils.sampledSize(options.outHeight, options.inSampleSize), options.inSampleSize, options.inPreferredConfig);
+
+        Bitmap sampled;
+        try {
+            sampled = BitmapFactory.decodeFileDescriptor(descriptor, null, options);
+        } catch (IllegalArgumentException ex) {
+            // the pooled bitmap was not acceptable to this decoder
+            sampled = null;
+        }
+        if (sampled == null && options.inBitmap != null) {
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            if (!seekable) {
+                descriptor = reopener.reopen();
+            }
+            sampled = BitmapFactory.decodeFileDescriptor(descriptor, null, options);
+        }
+
+        if (sampled == null || (orientation == ExifOrientation.NORMAL && sampled.getWidth() <= requestedWidth)) {
+            return sampled;
+        }
+
+        final int sampledWidth = swap ? sampled.getHeight() : sampled.getWidth();
+        final int sampledHeight = swap ? sampled.getWidth() : sampled.getHeight();
+        final int width = Math.min(requestedWidth, sampledWidth);
+        final int height = SampleSizeUtils.scaledHeight(sampledWidth, sampledHeight, width);
+        final Bitmap.Config config = sampled.getConfig() != null ? sampled.getConfig() : Bitmap.Config.ARGB_8888;
+        final Bitmap scaled = resizeBitmap(sampled, width, height, config, pool.get(width, height, config), orientation);
+        pool.put(sampled);
+        return scaled;
+    }
+
+    /**
+     * Decodes a file as a mutable bitmap, reusing pixel memory from pool when possible.
+     * JPEGs decode to RGB_565.
+     */
+    public static Bitmap decodeFile(final String path, final BitmapPool pool) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inPreferredConfig = "image/jpeg".equals(options.outMimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = pool.getForDecode(options.outWidth, options.outHeight, 1, options.inPreferredConfig);
+        try {
+            final Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+            if (bitmap != null || options.inBitmap == null) {
+                return bitmap;
+            }
+        } catch (IllegalArgumentException ex) {
+            // fall through and decode without reuse
+        }
+
+        pool.put(options.inBitmap);
+        options.inBitmap = null;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    private static int readOrientation(final FileDescriptor fileDescriptor) {
+        try {
+            // not closed, that would close the descriptor the caller owns
+            return ExifOrientation.readOrientation(new BufferedInputStream(new FileInputStream(fileDescriptor)));
+        } catch (IOException ex) {
+            return ExifOrientation.NORMAL;
+        }
+    }
+
+    private static boolean rewind(final FileDescriptor fileDescriptor) {
+        try {
+            new FileInputStream(fileDescriptor).getChannel().position(0);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
     public static Bitmap resizeBitmap(final Bitmap bitmap, final int requestedWidth, final int requestedHeight) {
-        final int srcWidth = bitmap.getWidth();
-        final int srcHeight = bitmap.getHeight();
+        return resizeBitmap(bitmap, requestedWidth, requestedHeight, null, null);
+    }
+
+    /**
+     * Scales bitmap to cover requestedWidth x requestedHeight and center-crops the rest in
+     * a single draw, so the only allocation is the returned bitmap.
+     *
+     * @param config output config, or null to keep the source config. See
+     *               {@link #getPreferredConfig(Bitmap)}.
+     * @param reuse  a mutable bitmap of the requested size and config to draw into instead
+     *               of allocating one, or null
+     */
+    public static Bitmap resizeBitmap(final Bitmap bitmap, final int requestedWidth, final int requestedHeight,
+                                      final Bitmap.Config config, final Bitmap reuse) {
+        return resizeBitmap(bitmap, requestedWidth, requestedHeight, config, reuse, ExifOrientation.NORMAL);
+    }
+
+    /**
+     * Like {@link #resizeBitmap(Bitmap, int, int, Bitmap.Config, Bitmap)} for a bitmap whose
+     * pixels are stored in the given EXIF orientation. The crop is taken from the upright
+     * picture, and rotation, crop and scale are drawn as one matrix.
+     */
+    public static Bitmap resizeBitmap(final Bitmap bitmap, final int requestedWidth, final int requestedHeight,
+                                      final Bitmap.Config config, final Bitmap reuse, final int orientation) {
+        final Bitmap.Config targetConfig = config != null ? config
+                : bitmap.getConfig() != null ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+
+        if (reuse == null && orientation == ExifOrientation.NORMAL && bitmap.getWidth() == requestedWidth
+                && bitmap.getHeight() == requestedHeight && targetConfig == bitmap.getConfig()) {
+            return bitmap;
+        }
+
+        final boolean swap = ExifOrientation.swapsDimensions(orientation);
+        final int[] srcRect = new int[4];
+        CenterCropUtils.computeSourceRect(swap ? bitmap.getHeight() : bitmap.getWidth(),
+                swap ? bitmap.getWidth() : bitmap.getHeight(), requestedWidth, requestedHeight, srcRect);
+
+        final Bitmap target;
+        if (reuse != null && reuse.isMutable() && reuse.getWidth() == requestedWidth
+                && reuse.getHeight() == requestedHeight && reuse.getConfig() == targetConfig) {
+            target = reuse;
+            if (bitmap.hasAlpha()) {
+                target.eraseColor(Color.TRANSPARENT);
+            }
+        } else {
+            target = Bitmap.createBitmap(requestedWidth, requestedHeight, targetConfig);
+        }
 
-        final float widthRatio = (float) srcWidth / (float) requestedWidth;
-        final float heightRatio = (float) srcHeight / (float) requestedHeight;
+        final float[] affine = new float[6];
+        ExifOrientation.getTransform(orientation, bitmap.getWidth(), bitmap.getHeight(), affine);
+        final Matrix matrix = new Matrix();
+        matrix.setValues(new float[]{affine[0], affine[1], affine[2], affine[3], affine[4], affine[5], 0f, 0f, 1f});
+        matrix.postTranslate(-srcRect[0], -srcRect[1]);
+        matrix.postScale((float) requestedWidth / (srcRect[2] - srcRect[0]), (float) requestedHeight / (srcRect[3] - srcRect[1]));
 
-        if (widthRatio < heightRatio) {
-            final Bitmap scaleBitmap = Bitmap.createScaledBitmap(bitmap, requestedWidth, Math.round(srcHeight / widthRatio), true);
+        final Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(bitmap, matrix, RESIZE_PAINT);
+        return target;
+    }
+
+    /**
+     * Same center crop as {@link #resizeBitmap(Bitmap, int, int, Bitmap.Config, Bitmap)},
+     * but filtered by resampler on the CPU instead of bilinearly by a Canvas, for large
+     * downscales that would otherwise alias. Holds the source and target pixels as int
+     * arrays while it runs, so it belongs on a background thread.
+     * <p/>
+     * The app's own resizes do not need it: {@link #decodeSampledBitmap} subsamples by a
+     * power of two first, which leaves less than 2x to scale down, and at that ratio the
+     * 2x2 bilinear footprint still reaches every source pixel. Row copies and thumbnails
+     * shrink by at most 2x as well. Replacing those draws would double the memory of
+     * RGB_565 pictures for no visible gain, so this is for sources that did not come
+     * through the subsampled decode.
+     *
+     * @param reuse a mutable ARGB_8888 bitmap of the requested size to write into, or null
+     */
+    public static Bitmap resampleBitmap(final Bitmap bitmap, final int requestedWidth, final int requestedHeight,
+                                        final ArgbResampler resampler, final Bitmap reuse) {
+        final int[] srcRect = new int[4];
+        CenterCropUtils.computeSourceRect(bitmap.getWidth(), bitmap.getHeight(), requestedWidth, requestedHeight, srcRect);
+
+        final int[] src = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(src, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
-            return Bitmap.createBitmap(scaleBitmap, 0, Math.round((scaleBitmap.getHeight() - requestedHeight) / 2.0f), requestedWidth, requestedHeight);
+        final int[] dst = new int[requestedWidth * requestedHeight];
+        resampler.resample(src, bitmap.getWidth(), bitmap.getHeight(), srcRect[0], srcRect[1], srcRect[2], srcRect[3],
+                dst, requestedWidth, requestedHeight);
+
+        final Bitmap target;
+        if (reuse != null && reuse.isMutable() && reuse.getWidth() == requestedWidth
+                && reuse.getHeight() == requestedHeight && reuse.getConfig() == Bitmap.Config.ARGB_8888) {
+            target = reuse;
         } else {
-            final Bitmap scaleBitmap = Bitmap.createScaledBitmap(bitmap, Math.round(srcWidth / heightRatio), requestedHeight, true);
+            target = Bitmap.createBitmap(requestedWidth, requestedHeight, Bitmap.Config.ARGB_8888);
+        }
+        target.setPixels(dst, 0, requestedWidth, 0, 0, requestedWidth, requestedHeight);
+        target.setHasAlpha(bitmap.hasAlpha());
+        return target;
+    }
 
-            return Bitmap.createBitmap(scaleBitmap, Math.round((scaleBitmap.getWidth() - requestedWidth) / 2.0f), 0, requestedWidth, requestedHeight);
+    /**
+     * Like {@link #resizeBitmap(Bitmap, int, int)}, drawing into a bitmap from pool when
+     * one fits.
+     */
+    public static Bitmap resizeBitmapFromPool(final Bitmap bitmap, final int requestedWidth, final int requestedHeight, final BitmapPool pool) {
+        if (bitmap.getWidth() == requestedWidth && bitmap.getHeight() == requestedHeight) {
+            return bitmap;
         }
+        final Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        return resizeBitmap(bitmap, requestedWidth, requestedHeight, config, pool.get(requestedWidth, requestedHeight, config));
+    }
+
+    /**
+     * A copy of bitmap scaled by scale, for drawing it small without sampling the full
+     * resolution every frame.
+     *
+     * @param pool where to take the pixel memory from, or null
+     */
+    public static Bitmap createThumbnail(final Bitmap bitmap, final float scale, final BitmapPool pool) {
+        final int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        final int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        return pool != null
+                ? resizeBitmapFromPool(bitmap, width, height, pool)
+                : resizeBitmap(bitmap, width, height);
+    }
+
+    /**
+     * RGB_565 for opaque images, which halves their memory, ARGB_8888 otherwise.
+     */
+    public static Bitmap.Config getPreferredConfig(final Bitmap bitmap) {
+        return bitmap.hasAlpha() ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * Opens the image passed to {@link #decodeSampledBitmap} again, from its start.
+     */
+    public interface IReopener {
+        FileDescriptor reopen() throws IOException;
     }
 }
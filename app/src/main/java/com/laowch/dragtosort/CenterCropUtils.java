@@ -0,0 +1,31 @@
+package com.laowch.dragtosort;
+
+/**
+ * Center-crop geometry shared by {@link BitmapUtils#resizeBitmap}. Works on plain
+ * integers so it behaves the same on and off the device.
+ */
+public class CenterCropUtils {
+
+    /**
+     * Computes the part of a srcWidth x srcHeight image that, once scaled, exactly fills
+     * requestedWidth x requestedHeight with the overflow cropped evenly on both sides.
+     *
+     * @param outRect receives left, top, right, bottom in source pixels
+     */
+    public static void computeSourceRect(final int srcWidth, final int srcHeight,
+                                         final int requestedWidth, final int requestedHeight, final int[] outRect) {
+        final float widthRatio = (float) srcWidth / (float) requestedWidth;
+        final float heightRatio = (float) srcHeight / (float) requestedHeight;
+        final float ratio = Math.min(widthRatio, heightRatio);
+
+        final int cropWidth = Math.min(srcWidth, Math.round(requestedWidth * ratio));
+        final int cropHeight = Math.min(srcHeight, Math.round(requestedHeight * ratio));
+        final int left = (srcWidth - cropWidth) / 2;
+        final int top = (srcHeight - cropHeight) / 2;
+
+        outRect[0] = left;
+        outRect[1] = top;
+        outRect[2] = left + cropWidth;
+        outRect[3] = top + cropHeight;
+    }
+}
@@ -0,0 +1,422 @@
+package com.laowch.dragtosort;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LRU cache of already downscaled images in the app cache directory, bounded by total
+ * file size.
+ * <p/>
+ * The index lives in an append-only journal instead of being rebuilt from the directory:
+ * each entry is written to a temp file and renamed into place before its CLEAN line is
+ * appended, so a crash can at worst leave an untracked file behind, never a tracked file
+ * with partial content. Lines that did not make it to disk intact are ignored on replay,
+ * and every open checks the replayed index against the directory: entries whose file is
+ * gone are dropped, files nobody tracks are deleted, and the journal is rewritten if
+ * any of that, or a damaged line, was found. The journal is compacted once it is mostly
+ * redundant.
+ */
+public class DiskThumbnailCache {
+
+    private static final String DIRECTORY_NAME = "thumbnails";
+
+    private static final long DEFAULT_MAX_SIZE = 50 * 1024 * 1024;
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String JOURNAL_HEADER = "com.laowch.dragtosort.DiskThumbnailCache 1";
+
+    private static final String CLEAN = "CLEAN";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final int JPEG_QUALITY = 90;
+
+    private static DiskThumbnailCache sInstance;
+
+    private final File mDirectory;
+
+    private final long mMaxSize;
+
+    /**
+     * File name to file length, in access order.
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0, 0.75f, true);
+
+    private final ExecutorService mWriteExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("DiskThumbnailCache"));
+
+    private long mSize = 0;
+
+    private int mJournalLineCount = 0;
+
+    /**
+     * Set by the replay when a line was skipped, the journal must not be appended to then.
+     */
+    private boolean mJournalDamaged = false;
+
+    private Writer mJournalWriter;
+
+
+    public DiskThumbnailCache(File pDirectory, long pMaxSize) {
+        this.mDirectory = pDirectory;
+        this.mMaxSize = pMaxSize;
+    }
+
+    public static synchronized DiskThumbnailCache getInstance(Context pContext) {
+        if (sInstance == null) {
+            sInstance = new DiskThumbnailCache(new File(pContext.getCacheDir(), DIRECTORY_NAME), DEFAULT_MAX_SIZE);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Reads the cached image for pKey, or returns null. Does disk I/O, never call it on
+     * the main thread.
+     */
+    public Bitmap get(final String pKey) {
+        final String name = fileName(pKey);
+        synchronized (this) {
+            if (!ensureOpen() || !mEntries.containsKey(name)) {
+                return null;
+            }
+            appendJournal(READ, name, -1);
+        }
+
+        final Bitmap bitmap = BitmapUtils.decodeFile(new File(mDirectory, name).getPath(), BitmapPool.getInstance());
+        if (bitmap == null) {
+            // deleted behind our back or unreadable, forget it
+            remove(pKey);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Writes pBitmap on the cache's own background thread. pBitmap must not be recycled
+     * or reused until the write has finished.
+     */
+    public void putAsync(final String pKey, final Bitmap pBitmap) {
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                put(pKey, pBitmap);
+            }
+        });
+    }
+
+    public synchronized void remove(final String pKey) {
+        if (!ensureOpen()) {
+            return;
+        }
+        final String name = fileName(pKey);
+        final Long length = mEntries.remove(name);
+        if (length != null) {
+            mSize -= length;
+            new File(mDirectory, name).delete();
+            appendJournal(REMOVE, name, -1);
+        }
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    private void put(final String pKey, final Bitmap pBitmap) {
+        final String name = fileName(pKey);
+        final File tmpFile = new File(mDirectory, name + ".tmp");
+        final File file = new File(mDirectory, name);
+
+        synchronized (this) {
+            if (!ensureOpen()) {
+                return;
+            }
+        }
+
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            final boolean compressed = pBitmap.hasAlpha()
+                    ? pBitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+                    : pBitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.getFD().sync();
+            out.close();
+            out = null;
+
+            if (!compressed || !tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                return;
+            }
+        } catch (IOException ex) {
+            tmpFile.delete();
+            return;
+        } finally {
+            closeQuietly(out);
+        }
+
+        synchronized (this) {
+            final Long previous = mEntries.put(name, file.length());
+            if (previous != null) {
+                mSize -= previous;
+            }
+            mSize += file.length();
+            appendJournal(CLEAN, name, file.length());
+            trimToSize();
+        }
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.getValue();
+            new File(mDirectory, eldest.getKey()).delete();
+            appendJournal(REMOVE, eldest.getKey(), -1);
+        }
+    }
+
+    /**
+     * Opens the journal on first use, replaying it into memory. Must hold the lock.
+     */
+    private boolean ensureOpen() {
+        if (mJournalWriter != null) {
+            return true;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return false;
+        }
+
+        final File journal = new File(mDirectory, JOURNAL_FILE);
+        final boolean replayed = journal.exists() && readJournal(journal);
+
+        try {
+            if (replayed) {
+                final boolean stale = dropMissingFiles();
+                deleteUntrackedFiles();
+                if (stale || mJournalDamaged || !endsWithNewline(journal)) {
+                    // appending after a torn last line would damage the next one too
+                    rebuildJournal();
+                    mJournalDamaged = false;
+                } else {
+                    mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), "US-ASCII"));
+                }
+            } else {
+                // nothing usable to replay, start over from an empty index
+                journal.delete();
+                mEntries.clear();
+                mSize = 0;
+                deleteUntrackedFiles();
+                rebuildJournal();
+            }
+            return true;
+        } catch (IOException ex) {
+            mJournalWriter = null;
+            return false;
+        }
+    }
+
+    /**
+     * Returns false, having replayed nothing, if the header cannot be read or is not ours.
+     */
+    private boolean readJournal(final File pJournal) {
+        BufferedReader reader = null;
+        boolean headerRead = false;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(pJournal), "US-ASCII"));
+            if (!JOURNAL_HEADER.equals(reader.readLine())) {
+                return false;
+            }
+            headerRead = true;
+
+            String line;
+            int lineCount = 0;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                final String[] parts = line.split(" ");
+                if (parts.length == 3 && CLEAN.equals(parts[0])) {
+                    final long length;
+                    try {
+                        length = Long.parseLong(parts[2]);
+                    } catch (NumberFormatException ex) {
+                        mJournalDamaged = true;
+                        continue;
+                    }
+                    final Long previous = mEntries.put(parts[1], length);
+                    if (previous != null) {
+                        mSize -= previous;
+                    }
+                    mSize += length;
+                } else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+                    final Long previous = mEntries.remove(parts[1]);
+                    if (previous != null) {
+                        mSize -= previous;
+                    }
+                } else if (parts.length == 2 && READ.equals(parts[0])) {
+                    mEntries.get(parts[1]);
+                } else {
+                    mJournalDamaged = true;
+                }
+            }
+            mJournalLineCount = lineCount;
+            return true;
+        } catch (IOException ex) {
+            // keep whatever was replayed before the damaged part
+            mJournalDamaged = true;
+            return headerRead;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Drops the entries whose file is gone and takes the others' lengths from the files,
+     * so the size accounting holds whatever the journal said. Returns true if anything
+     * changed.
+     */
+    private boolean dropMissingFiles() {
+        boolean changed = false;
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            final long length = new File(mDirectory, entry.getKey()).length();
+            if (length == entry.getValue()) {
+                continue;
+            }
+            mSize -= entry.getValue();
+            if (length == 0) {
+                iterator.remove();
+            } else {
+                entry.setValue(length);
+                mSize += length;
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Deletes the files in the directory the index does not know about, including temp
+     * files left by writes that never finished, so they stop taking space nobody counts.
+     */
+    private void deleteUntrackedFiles() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (!JOURNAL_FILE.equals(name) && !mEntries.containsKey(name)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes a journal holding only the live entries and swaps it in atomically.
+     */
+    private void rebuildJournal() throws IOException {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+
+        final File tmpJournal = new File(mDirectory, JOURNAL_FILE_TMP);
+        final FileOutputStream out = new FileOutputStream(tmpJournal);
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, "US-ASCII"));
+        try {
+            writer.write(JOURNAL_HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            writer.close();
+        }
+
+        if (!tmpJournal.renameTo(new File(mDirectory, JOURNAL_FILE))) {
+            throw new IOException("cannot replace journal");
+        }
+        mJournalLineCount = mEntries.size();
+        mJournalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(mDirectory, JOURNAL_FILE), true), "US-ASCII"));
+    }
+
+    private void appendJournal(final String pOp, final String pName, final long pLength) {
+        try {
+            mJournalWriter.write(pLength >= 0 ? pOp + ' ' + pName + ' ' + pLength + '\n' : pOp + ' ' + pName + '\n');
+            mJournalWriter.flush();
+
+            mJournalLineCount++;
+
+            final int redundantOpCount = mJournalLineCount - mEntries.size();
+            if (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= mEntries.size()) {
+                rebuildJournal();
+            }
+        } catch (IOException ex) {
+            // the index in memory is still right, the next rebuild will catch up
+        }
+    }
+
+    private static boolean endsWithNewline(final File pFile) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(pFile, "r");
+            if (file.length() == 0) {
+                return false;
+            }
+            file.seek(file.length() - 1);
+            return file.read() == '\n';
+        } catch (IOException ex) {
+            return false;
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    static String fileName(final String pKey) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(pKey.getBytes());
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            return String.valueOf(pKey.hashCode() & 0x7fffffff);
+        }
+    }
+
+    private static void closeQuietly(final Closeable pCloseable) {
+        if (pCloseable != null) {
+            try {
+                pCloseable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+}
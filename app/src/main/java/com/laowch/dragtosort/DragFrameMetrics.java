@@ -0,0 +1,258 @@
+package com.laowch.dragtosort;
+
+import android.view.Choreographer;
+
+/**
+ * Opt-in frame timing for drag sessions of a {@link DraggableImageLayout}, see
+ * {@link DraggableImageLayout#setOnDragMetricsListener(IOnDragMetricsListener)}.
+ * <p/>
+ * While a session runs, from the long press until the expand transition has finished, every
+ * frame interval reported by {@link Choreographer} goes into a fixed histogram. Each session
+ * also records how long the collapse and expand transitions took, how long the hover cell
+ * took to reach the screen and how many swaps were made. Figures add up over sessions until
+ * {@link #reset()}. Nothing is recorded, and no frame callback is posted, while no listener
+ * is set.
+ */
+public class DragFrameMetrics implements Choreographer.FrameCallback {
+
+    /**
+     * Upper bounds, exclusive, of the histogram buckets in milliseconds. The last bucket
+     * holds everything slower.
+     */
+    private static final int[] BUCKET_UPPER_BOUNDS_MS = {8, 12, 17, 25, 34, 50, 100};
+
+    /**
+     * Frames longer than this missed at least one vsync at 60 Hz.
+     */
+    private static final long JANK_THRESHOLD_NANOS = 17 * 1000000L;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final DraggableImageLayout mLayout;
+
+    private final IOnDragMetricsListener mListener;
+
+    private final long[] mBucketCounts = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+
+    private long mFrameCount;
+    private long mJankFrameCount;
+    private long mTotalFrameNanos;
+    private long mMaxFrameNanos;
+
+    private int mSessionCount;
+    private int mSwapCount;
+
+    private long mTotalCollapseNanos;
+    private int mCollapseCount;
+    private long mTotalExpandNanos;
+    private int mExpandCount;
+    private long mTotalFirstHoverFrameNanos;
+    private int mFirstHoverFrameCount;
+
+    // current session
+    private boolean mRecording;
+    private long mLastFrameNanos;
+    private long mLongPressNanos;
+    private long mExpandStartNanos;
+    private boolean mCollapseStarted;
+    private boolean mCollapseRecorded;
+    private boolean mWaitingForHoverFrame;
+    private boolean mExpandStarted;
+
+
+    DragFrameMetrics(DraggableImageLayout pLayout, IOnDragMetricsListener pListener) {
+        this.mLayout = pLayout;
+        this.mListener = pListener;
+    }
+
+    // hooks called by DraggableImageLayout
+
+    void onLongPress() {
+        mRecording = true;
+        mLastFrameNanos = 0;
+        mLongPressNanos = System.nanoTime();
+        mCollapseStarted = false;
+        mCollapseRecorded = false;
+        mWaitingForHoverFrame = false;
+        mExpandStarted = false;
+        mSessionCount++;
+
+        Choreographer.getInstance().removeFrameCallback(this);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void onCollapseStarted() {
+        mCollapseStarted = true;
+        mWaitingForHoverFrame = true;
+    }
+
+    void onSwap() {
+        if (mRecording) {
+            mSwapCount++;
+        }
+    }
+
+    void onExpandStarted() {
+        mExpandStarted = true;
+        mExpandStartNanos = System.nanoTime();
+    }
+
+    void stop() {
+        mRecording = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRecording) {
+            return;
+        }
+
+        if (mLastFrameNanos != 0) {
+            recordFrame(frameTimeNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+
+        if (mWaitingForHoverFrame) {
+            mWaitingForHoverFrame = false;
+            mTotalFirstHoverFrameNanos += frameTimeNanos - mLongPressNanos;
+            mFirstHoverFrameCount++;
+        }
+
+        final boolean transitionRunning = mLayout.isTransitionRunning();
+        if (mCollapseStarted && !mCollapseRecorded && !transitionRunning) {
+            mCollapseRecorded = true;
+            mTotalCollapseNanos += frameTimeNanos - mLongPressNanos;
+            mCollapseCount++;
+        }
+
+        if (mExpandStarted && !transitionRunning) {
+            mTotalExpandNanos += frameTimeNanos - mExpandStartNanos;
+            mExpandCount++;
+            mRecording = false;
+            if (mListener != null) {
+                mListener.onDragSessionFinished(this);
+            }
+            return;
+        }
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void recordFrame(long frameNanos) {
+        mFrameCount++;
+        mTotalFrameNanos += frameNanos;
+        if (frameNanos > mMaxFrameNanos) {
+            mMaxFrameNanos = frameNanos;
+        }
+        if (frameNanos > JANK_THRESHOLD_NANOS) {
+            mJankFrameCount++;
+        }
+
+        int bucket = 0;
+        while (bucket < BUCKET_UPPER_BOUNDS_MS.length && frameNanos >= BUCKET_UPPER_BOUNDS_MS[bucket] * NANOS_PER_MILLI) {
+            bucket++;
+        }
+        mBucketCounts[bucket]++;
+    }
+
+    // aggregated results
+
+    public int getBucketCount() {
+        return mBucketCounts.length;
+    }
+
+    /**
+     * Exclusive upper bound of bucket in milliseconds, or Integer.MAX_VALUE for the last.
+     */
+    public int getBucketUpperBoundMillis(int bucket) {
+        return bucket < BUCKET_UPPER_BOUNDS_MS.length ? BUCKET_UPPER_BOUNDS_MS[bucket] : Integer.MAX_VALUE;
+    }
+
+    public long getFrameCountInBucket(int bucket) {
+        return mBucketCounts[bucket];
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getJankFrameCount() {
+        return mJankFrameCount;
+    }
+
+    public float getAverageFrameMillis() {
+        return mFrameCount == 0 ? 0 : (float) mTotalFrameNanos / mFrameCount / NANOS_PER_MILLI;
+    }
+
+    public float getMaxFrameMillis() {
+        return (float) mMaxFrameNanos / NANOS_PER_MILLI;
+    }
+
+    public int getSessionCount() {
+        return mSessionCount;
+    }
+
+    public int getSwapCount() {
+        return mSwapCount;
+    }
+
+    /**
+     * From the long press until the collapse transition has finished.
+     */
+    public float getAverageCollapseMillis() {
+        return mCollapseCount == 0 ? 0 : (float) mTotalCollapseNanos / mCollapseCount / NANOS_PER_MILLI;
+    }
+
+    /**
+     * From the drop animation ending until the expand transition has finished.
+     */
+    public float getAverageExpandMillis() {
+        return mExpandCount == 0 ? 0 : (float) mTotalExpandNanos / mExpandCount / NANOS_PER_MILLI;
+    }
+
+    /**
+     * From the long press until the first frame showing the hover cell.
+     */
+    public float getAverageTimeToFirstHoverFrameMillis() {
+        return mFirstHoverFrameCount == 0 ? 0 : (float) mTotalFirstHoverFrameNanos / mFirstHoverFrameCount / NANOS_PER_MILLI;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mBucketCounts.length; i++) {
+            mBucketCounts[i] = 0;
+        }
+        mFrameCount = mJankFrameCount = mTotalFrameNanos = mMaxFrameNanos = 0;
+        mSessionCount = mSwapCount = 0;
+        mTotalCollapseNanos = mTotalExpandNanos = mTotalFirstHoverFrameNanos = 0;
+        mCollapseCount = mExpandCount = mFirstHoverFrameCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("DragFrameMetrics[sessions=").append(mSessionCount)
+                .append(",swaps=").append(mSwapCount)
+                .append(",frames=").append(mFrameCount)
+                .append(",jank=").append(mJankFrameCount)
+                .append(",avgFrameMs=").append(getAverageFrameMillis())
+                .append(",maxFrameMs=").append(getMaxFrameMillis())
+                .append(",collapseMs=").append(getAverageCollapseMillis())
+                .append(",expandMs=").append(getAverageExpandMillis())
+                .append(",firstHoverFrameMs=").append(getAverageTimeToFirstHoverFrameMillis())
+                .append(",histogram=");
+        for (int i = 0; i < mBucketCounts.length; i++) {
+            builder.append(i == 0 ? "" : " ").append('<')
+                    .append(i < BUCKET_UPPER_BOUNDS_MS.length ? String.valueOf(BUCKET_UPPER_BOUNDS_MS[i]) : "inf")
+                    .append(':').append(mBucketCounts[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    public interface IOnDragMetricsListener {
+        /**
+         * Called on the main thread after each drag session, with the figures of all
+         * sessions so far.
+         */
+        void onDragSessionFinished(DragFrameMetrics metrics);
+    }
+}
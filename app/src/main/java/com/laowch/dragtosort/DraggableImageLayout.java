@@ -2,14 +2,15 @@ package com.laowch.dragtosort;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
@@ -17,7 +18,12 @@ import android.widget.LinearLayout;
 import android.widget.ScrollView;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 
 /**
  * Created by lao on 14/12/20.
@@ -28,7 +34,23 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
     private View mAddPictureView;
 
-    private final int SMOOTH_SCROLL_AMOUNT_AT_EDGE = 15;
+    /**
+     * Height in dp of the zones along the top and bottom edge that start the auto-scroll.
+     */
+    private final int AUTO_SCROLL_EDGE_ZONE = 48;
+
+    /**
+     * Auto-scroll speed in dp per second once the hover cell reaches the edge.
+     */
+    private final int AUTO_SCROLL_MAX_SPEED = 1200;
+
+    /**
+     * Longest frame interval one auto-scroll step accounts for, so a dropped frame does
+     * not turn into a jump.
+     */
+    private static final long AUTO_SCROLL_MAX_FRAME_NANOS = 50 * 1000000L;
+
+    private static final long AUTO_SCROLL_FIRST_FRAME_NANOS = 16 * 1000000L;
 
 
     private int mDownX = -1;
@@ -38,24 +60,164 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
     private int mOffsetY = 0;
 
 
+    private int mLastEventX = -1;
     private int mLastEventY = -1;
 
     private final int INVALID_POINTER_ID = -1;
     private int mActivePointerId = INVALID_POINTER_ID;
 
     private ImageView mHoverCell;
-    private Rect mHoverCellCurrentBounds;
-    private Rect mHoverCellOriginalBounds;
+    private final Rect mHoverCellCurrentBounds = new Rect();
+    private final Rect mHoverCellOriginalBounds = new Rect();
 
     private boolean mCellIsMobile = false;
     private boolean mIsMobileScrolling = false;
-    private int mSmoothScrollAmountAtEdge = 0;
+    private int mAutoScrollEdgeZone = 0;
+    private float mAutoScrollMaxSpeed = 0;
+    private long mLastAutoScrollFrameNanos = 0;
+    private float mAutoScrollRemainder = 0;
+
+    private final Choreographer.FrameCallback mAutoScrollFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            onAutoScrollFrame(frameTimeNanos);
+        }
+    };
 
     private final int INVALID_POSITION = -1;
 
     private int mMobilePosition = INVALID_POSITION;
 
-    final HashMap<Integer, Rect> childBounds = new HashMap<Integer, Rect>();
+    /**
+     * Bounds of each child before a collapse or expand, tops relative to the scroll
+     * position.
+     */
+    private int[] mChildStartLefts = new int[0];
+    private int[] mChildStartTops = new int[0];
+    private int[] mChildStartWidths = new int[0];
+    private int[] mChildStartHeights = new int[0];
+
+    private BitmapPool mBitmapPool;
+
+    private VirtualRowBinder mRowBinder;
+
+    private final ImageOrderModel mOrderModel = new ImageOrderModel();
+
+    private static final int SWAP_ANIMATION_DURATION = 300;
+
+    private static final int COLLAPSE_ANIMATION_DURATION = 100;
+    private static final int EXPAND_ANIMATION_DURATION = 300;
+
+    /**
+     * Scale of the thumbnails made next to every row bitmap. Rows show them while the
+     * layout is collapsed to this scale or less, so they are never drawn enlarged.
+     */
+    static final float THUMBNAIL_SCALE = 0.5f;
+
+    private static final int PLACEHOLDER_COLOR = 0xffeeeeee;
+
+    private boolean mShowingThumbnails = false;
+
+    /**
+     * Child index shown in each slot while reordering, and the top of each slot.
+     */
+    private int[] mSlotOrder = new int[0];
+    private int[] mSlotTops = new int[0];
+    private int mSlotCount = 0;
+
+    /**
+     * Columns of the grid the pictures are collapsed into for a drag, 1 for a single
+     * column scaled to fit the screen.
+     */
+    private int mGridColumnCount = 1;
+
+    /**
+     * True while the children are laid out in square cells of mGridCellSize, row by row,
+     * instead of by LinearLayout.
+     */
+    private boolean mGridLaidOut = false;
+    private int mGridCellSize = 0;
+
+    private final SwapAnimator mSwapAnimator = new SwapAnimator(this, SWAP_ANIMATION_DURATION);
+
+    private final ScaleTransition mScaleTransition = new ScaleTransition(this);
+
+    // state handed from onLongClick/expandImages to their pre-draw listeners
+    private int mTransitionScrollY = 0;
+    private int mLastMobilePosition = INVALID_POSITION;
+
+    private View mReleasedView;
+
+    private DragFrameMetrics mDragMetrics;
+
+    private final ViewTreeObserver.OnPreDrawListener mCollapsePreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            onCollapseLaidOut();
+            return true;
+        }
+    };
+
+    private final ViewTreeObserver.OnPreDrawListener mExpandPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            onExpandLaidOut();
+            return true;
+        }
+    };
+
+    private final AnimatorListenerAdapter mReleaseHoverCellListener = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            mHoverCell.animate().setListener(null);
+            mHoverCell.setVisibility(GONE);
+            mHoverCell.setImageDrawable(null);
+            mReleasedView.setAlpha(1);
+            mReleasedView = null;
+            expandImages();
+        }
+    };
+
+    private boolean mIsReordering = false;
+
+    /**
+     * True from the long press that starts a drag until the expanded layout is laid out
+     * again. Rows appended meanwhile wait in mDeferredItems, with any bitmaps that arrive for
+     * them, and are added by {@link #endDragSession()}, so the slots, the recorded start
+     * bounds and the collapsed sizes only ever cover the rows the drag started with.
+     */
+    private boolean mInDragSession = false;
+
+    private final List<ImageItem> mDeferredItems = new ArrayList<ImageItem>();
+
+    private final IdentityHashMap<ImageItem, RowBitmaps> mDeferredBitmaps = new IdentityHashMap<ImageItem, RowBitmaps>();
+
+    /**
+     * Rows found unreadable during a drag, removed once it ends.
+     */
+    private final List<ImageItem> mDeferredRemovals = new ArrayList<ImageItem>();
+
+    private IOnDragEndedListener mOnDragEndedListener;
+
+    /**
+     * Rows given bitmaps by this layout rather than by the row binder: every row of a layout
+     * that is not virtualized, and rows of images that only exist in memory.
+     */
+    private final LinkedHashSet<ImageView> mResidentRows = new LinkedHashSet<ImageView>();
+
+    private int mLayoutPassCount = 0;
+
+    private boolean mIsSwappingChildren = false;
+
+    /**
+     * Depth of nested {@link #beginBatch()} calls. While above 0 rows are added and removed
+     * without requesting layout.
+     */
+    private int mBatchDepth = 0;
+
+    private boolean mBatchChanged = false;
 
 
     public DraggableImageLayout(Context context) {
@@ -75,25 +237,511 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
     public void init(Context context) {
         setOnLongClickListener(this);
-        mSmoothScrollAmountAtEdge = DisplayUtils.dpToPixel(getContext(), SMOOTH_SCROLL_AMOUNT_AT_EDGE);
+        mAutoScrollEdgeZone = DisplayUtils.dpToPixel(getContext(), AUTO_SCROLL_EDGE_ZONE);
+        mAutoScrollMaxSpeed = DisplayUtils.dpToPixel(getContext(), AUTO_SCROLL_MAX_SPEED);
+
+        // swaps held back during the collapse are looked for again once it is over
+        mScaleTransition.setEndAction(new Runnable() {
+            @Override
+            public void run() {
+                if (mCellIsMobile) {
+                    handleCellSwitch();
+                }
+            }
+        });
+
+        setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+                if (!mIsSwappingChildren) {
+                    releaseImage(child);
+                }
+            }
+        });
+
+        mOrderModel.addOnOrderChangedListener(new ImageOrderModel.IOnOrderChangedListener() {
+            @Override
+            public void onItemInserted(int index, ImageItem item) {
+                ImageView imageView = createImageView(item);
+                if (mBatchDepth > 0) {
+                    // laid out once, by endBatch()
+                    addViewInLayout(imageView, index, imageView.getLayoutParams(), true);
+                    mBatchChanged = true;
+                } else {
+                    addView(imageView, index);
+                }
+            }
+
+            @Override
+            public void onItemRemoved(int index, ImageItem item) {
+                if (mBatchDepth > 0) {
+                    removeViewInLayout(getChildAt(index));
+                    mBatchChanged = true;
+                } else {
+                    removeViewAt(index);
+                }
+            }
+
+            @Override
+            public void onItemMoved(int from, int to) {
+                if (mIsReordering) {
+                    // the children are put in order once, in commitReorder()
+                    return;
+                }
+                View view = getChildAt(from);
+                mIsSwappingChildren = true;
+                removeViewAt(from);
+                addView(view, to);
+                mIsSwappingChildren = false;
+            }
+        });
+    }
+
+    /**
+     * The order the pictures are shown in. Changing it updates the layout.
+     */
+    public ImageOrderModel getOrderModel() {
+        return mOrderModel;
+    }
+
+    private ImageView createImageView(ImageItem item) {
+        ImageView imageView;
+        if (item.isTiled()) {
+            TiledImageView tiledView = new TiledImageView(getContext());
+            tiledView.setSource(item.getUri());
+            imageView = tiledView;
+        } else {
+            imageView = new ImageView(getContext());
+            // bound bitmaps are already the row size, thumbnails are stretched to it
+            imageView.setScaleType(ImageView.ScaleType.FIT_XY);
+        }
+        imageView.setLayoutParams(new LinearLayout.LayoutParams(item.getWidth(), item.getHeight()));
+        // shows where a picture will go until its bitmap is bound
+        imageView.setBackgroundColor(PLACEHOLDER_COLOR);
+        imageView.setTag(item);
+        return imageView;
+    }
+
+    /**
+     * Adds a row for item, sized to the item whatever bitmap is bound to it. Meant for small
+     * images that only exist in memory, bitmap is resized on the calling thread. Virtualized
+     * rows with a uri ignore bitmap and load themselves once they scroll into view.
+     * <p/>
+     * During a drag the row is only added once the drag ends, see {@link #isDragging()}.
+     *
+     * @return the new row, or null while it waits for the drag to end
+     */
+    public ImageView addImage(ImageItem item, Bitmap bitmap) {
+        if (mInDragSession) {
+            mDeferredItems.add(item);
+            if (bitmap != null && (mRowBinder == null || item.getUri() == null)) {
+                mDeferredBitmaps.put(item, RowBitmaps.create(bitmap, item.getWidth(), item.getHeight(), mBitmapPool));
+            }
+            return null;
+        }
+        mOrderModel.add(item);
+        ImageView imageView = (ImageView) getChildAt(mOrderModel.size() - 1);
+
+        if (bitmap != null && (mRowBinder == null || item.getUri() == null)) {
+            setRowBitmaps(imageView, item, RowBitmaps.create(bitmap, item.getWidth(), item.getHeight(), mBitmapPool));
+        }
+        return imageView;
+    }
+
+    /**
+     * Starts a batch of changes to the order model. Rows inserted or removed before the
+     * matching {@link #endBatch()} are laid out together in a single measure and layout
+     * pass, however many there are, so items can be streamed in as they arrive. Batches may
+     * nest; only the outermost end lays out.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    public void endBatch() {
+        if (mBatchDepth == 0 || --mBatchDepth > 0 || !mBatchChanged) {
+            return;
+        }
+        mBatchChanged = false;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Adds an empty placeholder row for each item, in order, with a single layout pass for
+     * the whole batch. Fill them with {@link #fillImage(ImageItem, RowBitmaps)} as their
+     * bitmaps arrive; virtualized rows also fill themselves once they scroll into view.
+     */
+    public void addImages(List<ImageItem> items) {
+        addImages(mOrderModel.size(), items);
+    }
+
+    /**
+     * Like {@link #addImages(List)}, with the first new row at index.
+     * <p/>
+     * A drag works on the rows it started with, so during one, see {@link #isDragging()},
+     * nothing is added to the order model or the view tree. Rows appended at the end are
+     * queued and added in one batch once the drag ends; bitmaps handed to
+     * {@link #fillImage(ImageItem, RowBitmaps)} for them meanwhile are shown then. Inserting
+     * anywhere else throws.
+     *
+     * @throws IllegalStateException if index is inside the list during a drag
+     */
+    public void addImages(int index, List<ImageItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        if (mInDragSession) {
+            if (index < mOrderModel.size()) {
+                throw new IllegalStateException("Cannot insert rows while dragging");
+            }
+            mDeferredItems.addAll(items);
+            return;
+        }
+        beginBatch();
+        try {
+            mOrderModel.insertAll(index, items);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Adds the rows of a restored list so that the first frame costs the same however long
+     * the list is: only the rows from position on that fill twice the screen height are
+     * added at first, the rest are added before and after them once that frame is drawn,
+     * and the scroll view is moved so the row at position stays where it was shown.
+     */
+    public void restoreImages(List<ImageItem> items, int position) {
+        if (items.isEmpty()) {
+            return;
+        }
+        final int first = Math.max(0, Math.min(items.size() - 1, position));
+        final int limit = 2 * DisplayUtils.getScreenHeight(getContext());
+        int end = first;
+        int height = 0;
+        while (end < items.size() && height < limit) {
+            height += items.get(end).getHeight();
+            end++;
+        }
+
+        final List<ImageItem> before = new ArrayList<ImageItem>(items.subList(0, first));
+        final List<ImageItem> after = new ArrayList<ImageItem>(items.subList(end, items.size()));
+        addImages(new ArrayList<ImageItem>(items.subList(first, end)));
+        if (before.isEmpty() && after.isEmpty()) {
+            return;
+        }
+
+        getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                getViewTreeObserver().removeOnPreDrawListener(this);
+                // runs after the frame this listener was called for
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mInDragSession) {
+                            // nothing can be inserted in front of the rows being dragged
+                            postDelayed(this, COLLAPSE_ANIMATION_DURATION);
+                            return;
+                        }
+                        addRestoredRemainder(before, after);
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    private void addRestoredRemainder(List<ImageItem> before, List<ImageItem> after) {
+        final View anchor = getChildCount() > 0 ? getChildAt(0) : null;
+        final int anchorTop = anchor != null ? anchor.getTop() : 0;
+
+        beginBatch();
+        try {
+            mOrderModel.insertAll(0, before);
+            mOrderModel.insertAll(mOrderModel.size(), after);
+        } finally {
+            endBatch();
+        }
+
+        if (anchor == null || before.isEmpty() || mScrollView == null) {
+            return;
+        }
+        getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                getViewTreeObserver().removeOnPreDrawListener(this);
+                mScrollView.scrollBy(0, anchor.getTop() - anchorTop);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Index of the first row that reaches into the scroll viewport, 0 if there is none.
+     */
+    public int getFirstVisibleRow() {
+        final int viewportTop = mScrollView != null ? mScrollView.getScrollY() - getTop() : 0;
+        int low = 0;
+        int high = getChildCount();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (getChildAt(middle).getBottom() > viewportTop) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low < getChildCount() ? low : 0;
+    }
+
+    /**
+     * Removes the row of item, whose picture can no longer be opened, right away or once the
+     * drag in progress ends.
+     */
+    void removeUnreadableImage(ImageItem item) {
+        if (mInDragSession) {
+            if (!mDeferredRemovals.contains(item)) {
+                mDeferredRemovals.add(item);
+            }
+            return;
+        }
+        removeImages(Collections.singletonList(item));
+    }
+
+    /**
+     * Removes the rows of items, with a single layout pass for all of them. Items that are
+     * not in the layout are ignored. Rows cannot be removed while dragging.
+     *
+     * @return how many rows were removed
+     */
+    public int removeImages(Collection<ImageItem> items) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        if (mInDragSession) {
+            throw new IllegalStateException("Cannot remove rows while dragging");
+        }
+        beginBatch();
+        try {
+            return mOrderModel.removeAll(items);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Shows bitmaps, already drawn at the row's size, in the row of item, a placeholder
+     * added by {@link #addImages(List)}. Virtualized rows only take them while they are near
+     * the viewport, the others load from the cache when they get there. Bitmaps no row takes
+     * go back to the pool.
+     */
+    public void fillImage(ImageItem item, RowBitmaps bitmaps) {
+        if (bitmaps == null) {
+            return;
+        }
+        int index = mOrderModel.indexOf(item);
+        if (index < 0 && mDeferredItems.contains(item) && !mDeferredBitmaps.containsKey(item)) {
+            // shown once the row is added, after the drag
+            mDeferredBitmaps.put(item, bitmaps);
+            return;
+        }
+        if (index < 0) {
+            bitmaps.release(mBitmapPool);
+            return;
+        }
+        ImageView imageView = (ImageView) getChildAt(index);
+
+        if (mRowBinder != null && item.getUri() != null) {
+            mRowBinder.onImageLoaded(imageView, item, bitmaps);
+        } else if (item.mBoundBitmap == null) {
+            setRowBitmaps(imageView, item, bitmaps);
+        } else {
+            bitmaps.release(mBitmapPool);
+        }
+    }
+
+    private void setRowBitmaps(ImageView imageView, ImageItem item, RowBitmaps bitmaps) {
+        item.mBoundBitmap = bitmaps.getBitmap();
+        item.mOwnsBitmap = bitmaps.ownsBitmap();
+        item.mThumbnail = bitmaps.getThumbnail();
+        imageView.setImageBitmap(mShowingThumbnails ? item.mThumbnail : item.mBoundBitmap);
+        mResidentRows.add(imageView);
+    }
+
+    /**
+     * Gives the bitmaps a removed child owns back to the pool. A row showing the decoded
+     * bitmap itself does not own it, the memory cache, other rows or a pending disk write
+     * may still use it, so it is only let go. Virtualized rows are simply unbound.
+     */
+    private void releaseImage(View child) {
+        if (!(child instanceof ImageView)) {
+            return;
+        }
+
+        if (child instanceof TiledImageView) {
+            ((TiledImageView) child).release();
+            return;
+        }
+
+        ImageView imageView = (ImageView) child;
+        ImageItem item = child.getTag() instanceof ImageItem ? (ImageItem) child.getTag() : null;
+        mResidentRows.remove(imageView);
+
+        if (mRowBinder != null && item != null && item.getUri() != null) {
+            mRowBinder.unbind(imageView, item);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        if (item == null) {
+            return;
+        }
+
+        Bitmap thumbnail = item.mThumbnail;
+        Bitmap bitmap = item.mBoundBitmap;
+        boolean ownsBitmap = item.mOwnsBitmap;
+        item.mThumbnail = null;
+        item.mBoundBitmap = null;
+        item.mOwnsBitmap = false;
+
+        if (mBitmapPool == null) {
+            return;
+        }
+        if (thumbnail != null && thumbnail != bitmap) {
+            mBitmapPool.put(thumbnail);
+        }
+        if (bitmap != null && ownsBitmap) {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Points every bound row at its thumbnail, or back at its full size bitmap.
+     */
+    private void showThumbnails(boolean show) {
+        mShowingThumbnails = show;
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (!(child instanceof ImageView) || !(child.getTag() instanceof ImageItem)) {
+                continue;
+            }
+            ImageItem item = (ImageItem) child.getTag();
+            if (item.mBoundBitmap != null && item.mThumbnail != null) {
+                ((ImageView) child).setImageBitmap(show ? item.mThumbnail : item.mBoundBitmap);
+            }
+        }
+    }
+
+    /**
+     * Bytes of the bitmaps made for the rows: private full size copies and thumbnails.
+     * Bitmaps shared with the {@link BitmapMemoryCache} are counted there. Only rows that
+     * hold bitmaps are visited, not the whole list.
+     */
+    public long getBoundByteCount() {
+        long bytes = mRowBinder != null ? mRowBinder.getBoundByteCount() : 0;
+        for (ImageView row : mResidentRows) {
+            bytes += getRowByteCount((ImageItem) row.getTag());
+        }
+        return bytes;
+    }
+
+    static long getRowByteCount(ImageItem item) {
+        long bytes = 0;
+        if (item.mBoundBitmap != null && item.mOwnsBitmap) {
+            bytes += BitmapPool.getByteSize(item.mBoundBitmap);
+        }
+        if (item.mThumbnail != null && item.mThumbnail != item.mBoundBitmap) {
+            bytes += BitmapPool.getByteSize(item.mThumbnail);
+        }
+        return bytes;
+    }
+
+    /**
+     * True while rows show thumbnails instead of their full size bitmaps.
+     */
+    boolean isShowingThumbnails() {
+        return mShowingThumbnails;
+    }
+
+    /**
+     * Switches between keeping every row's bitmap resident and binding bitmaps only to rows
+     * near the viewport, see {@link VirtualRowBinder}. Needs the scroll view to be set.
+     */
+    public void setVirtualized(boolean virtualized, ImagePipeline imagePipeline) {
+        if (mRowBinder != null) {
+            mRowBinder.detach();
+            mRowBinder = null;
+        }
+        if (virtualized) {
+            mRowBinder = new VirtualRowBinder(this, mScrollView, imagePipeline);
+            if (getWindowToken() != null) {
+                mRowBinder.attach();
+            }
+        }
+    }
+
+    public boolean isVirtualized() {
+        return mRowBinder != null;
+    }
+
+    /**
+     * True from the long press that starts a drag until the layout has expanded again. Rows
+     * cannot be removed meanwhile, and rows appended wait until it ends.
+     */
+    public boolean isDragging() {
+        return mInDragSession;
+    }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mRowBinder != null) {
+            mRowBinder.attach();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mRowBinder != null) {
+            mRowBinder.detach();
+        }
+        if (mDragMetrics != null) {
+            mDragMetrics.stop();
+        }
+        stopAutoScroll();
+        super.onDetachedFromWindow();
     }
 
     @Override
     public boolean onLongClick(View v) {
 
+        mInDragSession = true;
         mCellIsMobile = true;
         requestDisallowInterceptTouchEvent(true);
 
+        if (mDragMetrics != null) {
+            mDragMetrics.onLongPress();
+        }
+
         // calculate scale ratio
-        float viewPortHeight = DisplayUtils.getScreenHeight(getContext()) - getResources().getDimensionPixelSize(R.dimen.draggable_image_vertical_padding) * 2;
         final float ratio;
-        if (viewPortHeight / this.getHeight() > 1) {
-            ratio = 1;
-        } else if (viewPortHeight / this.getHeight() < 0.3f) {
-            ratio = 0.3f;
+        if (mGridColumnCount > 1) {
+            // no picture ends up wider than a column
+            ratio = 1f / mGridColumnCount;
         } else {
-            ratio = viewPortHeight / this.getHeight();
+            float viewPortHeight = DisplayUtils.getScreenHeight(getContext()) - getResources().getDimensionPixelSize(R.dimen.draggable_image_vertical_padding) * 2;
+            if (viewPortHeight / this.getHeight() > 1) {
+                ratio = 1;
+            } else if (viewPortHeight / this.getHeight() < 0.3f) {
+                ratio = 0.3f;
+            } else {
+                ratio = viewPortHeight / this.getHeight();
+            }
         }
 
         // calculate mMobilePosition and record startBounds
@@ -102,6 +750,7 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
         final int scrollY = mScrollView.getScrollY();
 
+        recordChildStartBounds(scrollY);
 
         for (int i = 0; i < getChildCount(); i++) {
             View child = getChildAt(i);
@@ -110,10 +759,6 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
             if (totalY > mDownY && mMobilePosition == INVALID_POSITION) {
                 mMobilePosition = i;
             }
-
-            Rect startRect = new Rect(child.getLeft(), child.getTop() - scrollY, child.getRight(),
-                    child.getBottom() - scrollY);
-            childBounds.put(i, startRect);
         }
 
         final View selectedView = getChildAt(mMobilePosition);
@@ -121,67 +766,115 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
         // change layout
 
+        // the hover cell picks up the drawable of the selected row, so this covers it too
+        showThumbnails(ratio <= THUMBNAIL_SCALE);
+
         mAddPictureView.setVisibility(View.GONE);
+        collapseChildren(ratio);
+
+        // anim
+
+        mTransitionScrollY = scrollY;
+        getViewTreeObserver().addOnPreDrawListener(mCollapsePreDrawListener);
+
+        return true;
+    }
+
+    /**
+     * Shrinks every child by ratio for a drag, or into a cell of the grid when there is more
+     * than one column, and requests the single layout pass that applies it.
+     */
+    void collapseChildren(float ratio) {
         this.setPadding(0, 0, 0, 0);
 
+        mGridLaidOut = mGridColumnCount > 1;
+        if (mGridLaidOut) {
+            mGridCellSize = Math.max(1, getWidth() / mGridColumnCount);
+        }
+
         for (int i = 0; i < getChildCount(); i++) {
-            View child = getChildAt(i);
-            child.getLayoutParams().width = (int) (child.getLayoutParams().width * ratio);
-            child.getLayoutParams().height = (int) (child.getLayoutParams().height * ratio);
+            ViewGroup.LayoutParams lp = getChildAt(i).getLayoutParams();
+            if (!mGridLaidOut) {
+                lp.width = (int) (lp.width * ratio);
+                lp.height = (int) (lp.height * ratio);
+            } else if (lp.width >= lp.height) {
+                // keep the aspect ratio, the longer side fills the cell
+                lp.height = Math.max(1, (int) ((long) mGridCellSize * lp.height / lp.width));
+                lp.width = mGridCellSize;
+            } else {
+                lp.width = Math.max(1, (int) ((long) mGridCellSize * lp.width / lp.height));
+                lp.height = mGridCellSize;
+            }
         }
 
         requestLayout();
         invalidate();
+    }
 
-        // anim
-        final ArrayList<Animator> animations = new ArrayList<Animator>();
-
-
-        final ViewTreeObserver observer = getViewTreeObserver();
-        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-            @Override
-            public boolean onPreDraw() {
-                observer.removeOnPreDrawListener(this);
-
-                initHoverCell((ImageView) selectedView, animations, ratio, scrollY);
-
-                int scrollY = mScrollView.getScrollY();
+    private void onCollapseLaidOut() {
+        mScaleTransition.reset();
 
-                for (int i = 0; i < getChildCount(); i++) {
-                    View child = getChildAt(i);
-                    Rect startRect = childBounds.get(i);
-                    int startTop = startRect.top;
+        ImageView selectedView = (ImageView) getChildAt(mMobilePosition);
+        initHoverCell(selectedView, mChildStartWidths[mMobilePosition] / (float) selectedView.getWidth(), mTransitionScrollY);
+        beginReorder();
 
+        startScaleTransition(COLLAPSE_ANIMATION_DURATION);
 
-                    int delta = (int) (startTop - child.getTop() + child.getHeight() * (1 / ratio - 1) / 2) + scrollY;
-                    if (delta != 0) {
-                        ObjectAnimator yTransAnim = ObjectAnimator.ofFloat(child, View.TRANSLATION_Y, delta, 0);
-                        ObjectAnimator xScaleAnim = ObjectAnimator.ofFloat(child, View.SCALE_X, 1 / ratio, 1);
-                        ObjectAnimator yScaleAnim = ObjectAnimator.ofFloat(child, View.SCALE_Y, 1 / ratio, 1);
-                        animations.add(yTransAnim);
-                        animations.add(xScaleAnim);
-                        animations.add(yScaleAnim);
-                    }
-                }
+        if (mDragMetrics != null) {
+            mDragMetrics.onCollapseStarted();
+        }
+    }
 
-                AnimatorSet set = new AnimatorSet();
+    /**
+     * Starts dragging the child at position where it is, without the collapse transition.
+     * Lets tests drive the touch path directly.
+     */
+    void beginDrag(int position) {
+        mInDragSession = true;
+        mCellIsMobile = true;
+        mMobilePosition = position;
+        beginReorder();
+    }
 
-                set.setDuration(100);
-                set.playTogether(animations);
-                set.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        childBounds.clear();
-                    }
-                });
-                set.start();
+    private void recordChildStartBounds(int scrollY) {
+        if (mChildStartTops.length < getChildCount()) {
+            mChildStartLefts = new int[getChildCount()];
+            mChildStartTops = new int[getChildCount()];
+            mChildStartWidths = new int[getChildCount()];
+            mChildStartHeights = new int[getChildCount()];
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            mChildStartLefts[i] = child.getLeft();
+            mChildStartTops[i] = child.getTop() - scrollY;
+            mChildStartWidths[i] = child.getWidth();
+            mChildStartHeights[i] = child.getHeight();
+        }
+    }
 
-                return true;
+    /**
+     * Animates every child from its recorded start bounds to where the new layout put it,
+     * scaled about its centre. Only children inside the scroll viewport are animated frame
+     * by frame.
+     */
+    private void startScaleTransition(long duration) {
+        final int scrollY = mScrollView.getScrollY();
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getWidth() <= 0 || child.getHeight() <= 0) {
+                continue;
             }
-        });
 
+            float scale = mChildStartWidths[i] / (float) child.getWidth();
+            float dx = mChildStartLefts[i] + mChildStartWidths[i] / 2f - child.getLeft() - child.getWidth() / 2f;
+            float dy = mChildStartTops[i] + scrollY + mChildStartHeights[i] / 2f - child.getTop() - child.getHeight() / 2f;
+            if (dx != 0 || dy != 0 || scale != 1) {
+                mScaleTransition.setChildStart(i, dx, dy, scale);
+            }
+        }
 
-        return true;
+        final int viewportTop = scrollY - getTop();
+        mScaleTransition.start(duration, viewportTop, viewportTop + mScrollView.getHeight());
     }
 
     @Override
@@ -200,6 +893,7 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
                 int pointerIndex = event.findPointerIndex(mActivePointerId);
 
+                mLastEventX = (int) event.getX(pointerIndex);
                 mLastEventY = (int) event.getY(pointerIndex);
 
 
@@ -210,7 +904,6 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
                     handleCellSwitch();
 
-                    mIsMobileScrolling = false;
                     handleMobileCellScroll();
 
                     return false;
@@ -241,89 +934,269 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
         return super.onTouchEvent(event);
     }
 
+    /**
+     * Starts the auto-scroll once the hover cell enters an edge zone. From then on it runs
+     * once per frame rather than per touch event, and keeps going while the finger holds
+     * still, until the hover cell leaves the zone or the drag ends.
+     */
     private void handleMobileCellScroll() {
-        mIsMobileScrolling = handleMobileCellScroll(mLastEventY);
+        if (!mIsMobileScrolling && getAutoScrollSpeed() != 0) {
+            mIsMobileScrolling = true;
+            mLastAutoScrollFrameNanos = 0;
+            mAutoScrollRemainder = 0;
+            Choreographer.getInstance().postFrameCallback(mAutoScrollFrameCallback);
+        }
     }
 
-    private boolean handleMobileCellScroll(int lastY) {
-        if (lastY - mHoverCell.getHeight() / 2 < mScrollView.getScrollY()) {
-            mScrollView.smoothScrollBy(0, -mSmoothScrollAmountAtEdge);
-            return true;
-        } else if (lastY + mHoverCell.getHeight() / 2 > mScrollView.getHeight()) {
-            mScrollView.smoothScrollBy(0, mSmoothScrollAmountAtEdge);
-            return true;
+    private float getAutoScrollSpeed() {
+        final int viewportTop = mScrollView.getScrollY() - getTop();
+        final int halfHeight = mHoverCell.getHeight() / 2;
+        return AutoScrollUtils.computeScrollSpeed(mLastEventY - halfHeight, mLastEventY + halfHeight,
+                viewportTop, viewportTop + mScrollView.getHeight(), mAutoScrollEdgeZone, mAutoScrollMaxSpeed);
+    }
+
+    /**
+     * One auto-scroll step: scrolls by speed times the frame interval, moves the hover cell
+     * along so it stays under the finger, and looks for a new slot. Constant work per frame
+     * apart from the swap itself.
+     */
+    private void onAutoScrollFrame(long frameTimeNanos) {
+        if (!mCellIsMobile) {
+            mIsMobileScrolling = false;
+            return;
         }
 
+        final long elapsed = mLastAutoScrollFrameNanos == 0 ? AUTO_SCROLL_FIRST_FRAME_NANOS
+                : Math.min(frameTimeNanos - mLastAutoScrollFrameNanos, AUTO_SCROLL_MAX_FRAME_NANOS);
+        mLastAutoScrollFrameNanos = frameTimeNanos;
 
-        return false;
+        final float speed = getAutoScrollSpeed();
+        if (speed == 0) {
+            mIsMobileScrolling = false;
+            return;
+        }
+
+        final float distance = speed * elapsed / 1000000000f + mAutoScrollRemainder;
+        int delta = (int) distance;
+        mAutoScrollRemainder = distance - delta;
+
+        final int scrollY = mScrollView.getScrollY();
+        final int maxScrollY = Math.max(0, mScrollView.getChildAt(0).getHeight() - mScrollView.getHeight());
+        delta = Math.max(-scrollY, Math.min(maxScrollY - scrollY, delta));
+
+        if (delta != 0) {
+            mScrollView.scrollBy(0, delta);
+
+            // the finger stays put on screen, so it travels through the content
+            mLastEventY += delta;
+            mHoverCell.setTranslationY(mHoverCell.getTranslationY() + delta);
+
+            handleCellSwitch();
+        } else if (distance >= 1 || distance <= -1) {
+            // pinned at the end of the scroll range
+            mIsMobileScrolling = false;
+            return;
+        }
+
+        Choreographer.getInstance().postFrameCallback(mAutoScrollFrameCallback);
+    }
+
+    private void stopAutoScroll() {
+        Choreographer.getInstance().removeFrameCallback(mAutoScrollFrameCallback);
+        mIsMobileScrolling = false;
     }
 
     private void handleCellSwitch() {
+        // the scale transition owns the translation of the children until it ends, a swap
+        // animated meanwhile would be reset by its last frame
+        if (!mIsReordering || mScaleTransition.isRunning()) {
+            return;
+        }
+
+        int targetPosition = mGridLaidOut
+                ? SlotSearch.findGridSlot(mLastEventX, mLastEventY, getPaddingLeft(), getPaddingTop(),
+                mGridCellSize, mGridCellSize, mGridColumnCount, mSlotCount)
+                : SlotSearch.findTargetSlot(mSlotTops, mSlotCount, mMobilePosition, mLastEventY);
+        if (targetPosition != mMobilePosition) {
+            moveSlot(mMobilePosition, targetPosition);
+            mMobilePosition = targetPosition;
+        }
+    }
+
+    /**
+     * Starts a reorder session. From here until {@link #commitReorder()} the children keep
+     * their order and layout position; a move only changes which slot each view is drawn
+     * in, by translation, so swapping never requests a layout. Must be called with the
+     * collapsed layout already laid out.
+     * <p/>
+     * The session works on int arrays sized once here, so moves allocate nothing.
+     */
+    void beginReorder() {
+        mSlotCount = getChildCount();
+        if (mSlotOrder.length < mSlotCount) {
+            mSlotOrder = new int[mSlotCount];
+            mSlotTops = new int[mSlotCount + 1];
+        }
+        for (int i = 0; i < mSlotCount; i++) {
+            mSlotOrder[i] = i;
+        }
+
+        mSlotTops[0] = mSlotCount == 0 ? getPaddingTop() : getChildAt(0).getTop();
+        updateSlotTops(0, mSlotCount - 1);
+
+        mSwapAnimator.begin();
+        mIsReordering = true;
+    }
+
+    /**
+     * Moves the view in slot from to slot to, updates the order model and animates every
+     * view whose slot changed towards it, all in one step however far apart the slots are.
+     */
+    void moveSlot(int from, int to) {
+        if (!mIsReordering || from == to) {
+            return;
+        }
 
+        int moved = mSlotOrder[from];
+        if (from < to) {
+            System.arraycopy(mSlotOrder, from + 1, mSlotOrder, from, to - from);
+        } else {
+            System.arraycopy(mSlotOrder, to, mSlotOrder, to + 1, from - to);
+        }
+        mSlotOrder[to] = moved;
+        mOrderModel.move(from, to);
 
-        View belowView = mMobilePosition + 1 < getChildCount() ? getChildAt(mMobilePosition + 1) : null;
-        final View mobileView = getChildAt(mMobilePosition);
-        View aboveView = mMobilePosition - 1 < 0 ? null : getChildAt(mMobilePosition - 1);
+        if (mDragMetrics != null) {
+            mDragMetrics.onSwap();
+        }
 
-        final boolean isBelow = (belowView != null) && (mLastEventY > belowView.getTop() + belowView.getHeight() / 2);
-        boolean isAbove = (aboveView != null) && (mLastEventY < aboveView.getBottom() - aboveView.getHeight() / 2);
+        int first = Math.min(from, to);
+        int last = Math.max(from, to);
 
-        if (isBelow || isAbove) {
+        if (mGridLaidOut) {
+            // the cells in between shift by one, wrapping to the next or previous grid row
+            for (int i = first; i <= last; i++) {
+                int childIndex = mSlotOrder[i];
+                View child = getChildAt(childIndex);
+                mSwapAnimator.setTarget(childIndex, getGridCellLeft(i, child) - child.getLeft(),
+                        getGridCellTop(i, child) - child.getTop());
+            }
+        } else {
+            updateSlotTops(first, last);
+            for (int i = first; i <= last; i++) {
+                int childIndex = mSlotOrder[i];
+                mSwapAnimator.setTarget(childIndex, mSlotTops[i] - getChildAt(childIndex).getTop());
+            }
+        }
+        mSwapAnimator.start();
+    }
 
-            final View switchView = isBelow ? belowView : aboveView;
-            removeView(mobileView);
-            addView(mobileView, mMobilePosition + (isBelow ? 1 : -1));
+    /**
+     * Ends the reorder session by putting the children in slot order in one go, which
+     * costs a single layout pass however many moves were made.
+     */
+    void commitReorder() {
+        if (!mIsReordering) {
+            return;
+        }
+        mIsReordering = false;
+        mSwapAnimator.end();
+
+        boolean orderChanged = false;
+        for (int i = 0; i < mSlotCount; i++) {
+            getChildAt(i).setTranslationX(0);
+            getChildAt(i).setTranslationY(0);
+            orderChanged |= mSlotOrder[i] != i;
+        }
+
+        if (orderChanged) {
+            View[] children = new View[mSlotCount];
+            for (int i = 0; i < mSlotCount; i++) {
+                children[i] = getChildAt(mSlotOrder[i]);
+            }
 
-            mMobilePosition = isBelow ? mMobilePosition + 1 : mMobilePosition - 1;
+            // unlike removeView/addView this neither fires the hierarchy listener nor lays
+            // out once per view
+            detachAllViewsFromParent();
+            for (int i = 0; i < mSlotCount; i++) {
+                attachViewToParent(children[i], i, children[i].getLayoutParams());
+            }
+            requestLayout();
+            invalidate();
+        }
 
-            final ViewTreeObserver observer = getViewTreeObserver();
-            observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-                public boolean onPreDraw() {
-                    observer.removeOnPreDrawListener(this);
+        mSlotCount = 0;
+    }
 
+    private View getSlotView(int slot) {
+        return getChildAt(mSlotOrder[slot]);
+    }
 
-                    if (isBelow) {
-                        ObjectAnimator animator = ObjectAnimator.ofFloat(switchView,
-                                View.TRANSLATION_Y, mobileView.getHeight(), 0);
-                        animator.setDuration(300);
-                        animator.start();
+    private void updateSlotTops(int first, int last) {
+        for (int i = first; i <= last; i++) {
+            mSlotTops[i + 1] = mSlotTops[i] + getSlotView(i).getHeight();
+        }
+    }
 
-                        ObjectAnimator animator2 = ObjectAnimator.ofFloat(mobileView,
-                                View.TRANSLATION_Y, -switchView.getHeight(), 0);
-                        animator2.setDuration(300);
-                        animator2.start();
-                    } else {
-                        ObjectAnimator animator = ObjectAnimator.ofFloat(switchView,
-                                View.TRANSLATION_Y, -mobileView.getHeight(), 0);
-                        animator.setDuration(300);
-                        animator.start();
+    /**
+     * Left of view when it is shown in the grid cell of slot, centred in the cell.
+     */
+    private int getGridCellLeft(int slot, View view) {
+        return getPaddingLeft() + (slot % mGridColumnCount) * mGridCellSize + (mGridCellSize - view.getMeasuredWidth()) / 2;
+    }
 
-                        ObjectAnimator animator2 = ObjectAnimator.ofFloat(mobileView,
-                                View.TRANSLATION_Y, switchView.getHeight(), 0);
-                        animator2.setDuration(300);
-                        animator2.start();
-                    }
+    private int getGridCellTop(int slot, View view) {
+        return getPaddingTop() + (slot / mGridColumnCount) * mGridCellSize + (mGridCellSize - view.getMeasuredHeight()) / 2;
+    }
 
+    int getLayoutPassCount() {
+        return mLayoutPassCount;
+    }
 
-                    return true;
-                }
-            });
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        mLayoutPassCount++;
+        if (!mGridLaidOut) {
+            super.onLayout(changed, l, t, r, b);
+            return;
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            int left = getGridCellLeft(i, child);
+            int top = getGridCellTop(i, child);
+            child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
         }
     }
 
     private void touchEventsCancelled() {
-
+        touchEventsEnded();
     }
 
     private void touchEventsEnded() {
 
+        stopAutoScroll();
+
         if (mMobilePosition == INVALID_POSITION) {
             return;
         }
 
 
-        final View selectedView = getChildAt(mMobilePosition);
-        releaseHoverCell(selectedView);
+        final View selectedView = mIsReordering ? getSlotView(mMobilePosition) : getChildAt(mMobilePosition);
+        final int targetLeft;
+        final int targetTop;
+        if (!mIsReordering) {
+            targetLeft = selectedView.getLeft();
+            targetTop = selectedView.getTop();
+        } else if (mGridLaidOut) {
+            targetLeft = getGridCellLeft(mMobilePosition, selectedView);
+            targetTop = getGridCellTop(mMobilePosition, selectedView);
+        } else {
+            targetLeft = selectedView.getLeft();
+            targetTop = mSlotTops[mMobilePosition];
+        }
+
+        commitReorder();
+        releaseHoverCell(selectedView, targetLeft, targetTop);
 
 
     }
@@ -331,7 +1204,22 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (!mGridLaidOut) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        // every child has a fixed size, and the rows of the grid all have the cell height
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            ViewGroup.LayoutParams lp = child.getLayoutParams();
+            child.measure(MeasureSpec.makeMeasureSpec(lp.width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(lp.height, MeasureSpec.EXACTLY));
+        }
+        int rowCount = (getChildCount() + mGridColumnCount - 1) / mGridColumnCount;
+        setMeasuredDimension(
+                resolveSize(getPaddingLeft() + mGridColumnCount * mGridCellSize + getPaddingRight(), widthMeasureSpec),
+                resolveSize(getPaddingTop() + rowCount * mGridCellSize + getPaddingBottom(), heightMeasureSpec));
     }
 
 
@@ -340,58 +1228,45 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
      * size. The hover cell's BitmapDrawable is drawn on top of the bitmap every
      * single time an invalidate call is made.
      */
-    private void initHoverCell(ImageView imageView, ArrayList<Animator> animations, float ratio, int scrollY) {
+    private void initHoverCell(ImageView imageView, float fromScale, int scrollY) {
         int w = imageView.getWidth();
         int h = imageView.getHeight();
         int top = imageView.getTop();
         int left = imageView.getLeft();
 
         mHoverCell.setVisibility(View.VISIBLE);
-        FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(w, h);
-        mHoverCell.setLayoutParams(layoutParams);
+        if (mHoverCell.getLayoutParams() != null) {
+            mHoverCell.getLayoutParams().width = w;
+            mHoverCell.getLayoutParams().height = h;
+            mHoverCell.requestLayout();
+        } else {
+            mHoverCell.setLayoutParams(new FrameLayout.LayoutParams(w, h));
+        }
         mHoverCell.setTranslationX(left);
         mHoverCell.setTranslationY(top);
-        mHoverCell.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
+        // tiled rows stretch a small preview, the hover cell has to do the same
+        mHoverCell.setScaleType(imageView.getScaleType());
 
 
         Drawable drawable = imageView.getDrawable();
 
-        mHoverCellOriginalBounds = new Rect(left, top, left + w, top + h);
-        mHoverCellCurrentBounds = new Rect(mHoverCellOriginalBounds);
+        mHoverCellOriginalBounds.set(left, top, left + w, top + h);
+        mHoverCellCurrentBounds.set(mHoverCellOriginalBounds);
 
         mHoverCell.setImageDrawable(drawable);
 
 
         // animation
 
-        ObjectAnimator transX = ObjectAnimator.ofFloat(mHoverCell, View.TRANSLATION_X, left, mDownX - w / 2);
-        animations.add(transX);
-
-
         int rawY = mDownY - scrollY;
-        ObjectAnimator transY = ObjectAnimator.ofFloat(mHoverCell, View.TRANSLATION_Y, top, rawY - h / 2);
-        animations.add(transY);
-
-        ObjectAnimator scaleX = ObjectAnimator.ofFloat(mHoverCell, View.SCALE_X, 1 / ratio, 1);
-        animations.add(scaleX);
-
-        ObjectAnimator scaleY = ObjectAnimator.ofFloat(mHoverCell, View.SCALE_Y, 1 / ratio, 1);
-        animations.add(scaleY);
-
-
+        mScaleTransition.setHoverView(mHoverCell, left, mDownX - w / 2, top, rawY - h / 2, fromScale);
     }
 
 
-    private void releaseHoverCell(final View selectedView) {
+    private void releaseHoverCell(final View selectedView, int targetLeft, int targetTop) {
 
-        mHoverCell.animate().translationX(selectedView.getLeft()).translationY(selectedView.getTop()).setDuration(300).setListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                mHoverCell.setVisibility(GONE);
-                selectedView.setAlpha(1);
-                expandImages();
-            }
-        }).start();
+        mReleasedView = selectedView;
+        mHoverCell.animate().translationX(targetLeft).translationY(targetTop).setDuration(300).setListener(mReleaseHoverCellListener).start();
 
     }
 
@@ -400,34 +1275,36 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
         requestDisallowInterceptTouchEvent(false);
 
-        final int lastMobilePosition = mMobilePosition;
+        showThumbnails(false);
+
+        mLastMobilePosition = mMobilePosition;
 
 
         mCellIsMobile = false;
         mMobilePosition = INVALID_POSITION;
 
-        final float ratio = DisplayUtils.getScreenWidth(getContext()) / (float) getChildAt(0).getWidth();
+        final boolean wasGrid = mGridLaidOut;
+        mGridLaidOut = false;
+        final float ratio = DisplayUtils.getScreenWidth(getContext()) / (float) (wasGrid ? mGridCellSize : getChildAt(0).getWidth());
 
         // record startBounds
 
-
-        final int scrollY = mScrollView.getScrollY();
-
-        for (int i = 0; i < getChildCount(); i++) {
-            View child = getChildAt(i);
-
-            Rect startRect = new Rect(child.getLeft(), child.getTop() - scrollY, child.getRight(),
-                    child.getBottom() - scrollY);
-            childBounds.put(i, startRect);
-        }
+        recordChildStartBounds(mScrollView.getScrollY());
 
 
         // set ratio
 
         for (int i = 0; i < getChildCount(); i++) {
             View child = getChildAt(i);
-            child.getLayoutParams().width = (int) (child.getLayoutParams().width * ratio);
-            child.getLayoutParams().height = (int) (child.getLayoutParams().height * ratio);
+            if (wasGrid && child.getTag() instanceof ImageItem) {
+                // the cells do not keep the row sizes exactly, the items do
+                ImageItem item = (ImageItem) child.getTag();
+                child.getLayoutParams().width = item.getWidth();
+                child.getLayoutParams().height = item.getHeight();
+            } else {
+                child.getLayoutParams().width = (int) (child.getLayoutParams().width * ratio);
+                child.getLayoutParams().height = (int) (child.getLayoutParams().height * ratio);
+            }
         }
 
         mAddPictureView.setVisibility(View.VISIBLE);
@@ -439,55 +1316,78 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
 
         //anim
 
-        final ArrayList<Animator> animations = new ArrayList<Animator>();
-
-        final ViewTreeObserver observer = getViewTreeObserver();
-        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-            @Override
-            public boolean onPreDraw() {
-                observer.removeOnPreDrawListener(this);
-
-
-                View view = getChildAt(lastMobilePosition);
-                mScrollView.setScrollY(view.getTop());
-
-
-                int scrollY = mScrollView.getScrollY();
+        getViewTreeObserver().addOnPreDrawListener(mExpandPreDrawListener);
+    }
 
+    private void onExpandLaidOut() {
+        View view = getChildAt(mLastMobilePosition);
+        mScrollView.setScrollY(view.getTop());
 
-                for (int i = 0; i < getChildCount(); i++) {
-                    View child = getChildAt(i);
-                    Rect startRect = childBounds.get(i);
-                    int startTop = startRect.top;
+        mScaleTransition.reset();
+        startScaleTransition(EXPAND_ANIMATION_DURATION);
 
+        if (mDragMetrics != null) {
+            mDragMetrics.onExpandStarted();
+        }
+        endDragSession();
+    }
 
-                    int delta = (int) (startTop - child.getTop() + child.getHeight() * (1 / ratio - 1) / 2) + scrollY;
+    /**
+     * Ends a drag started by {@link #beginDrag(int)} at once, without the release and expand
+     * transitions. Lets tests drive the touch path directly.
+     */
+    void endDrag() {
+        commitReorder();
+        mCellIsMobile = false;
+        mMobilePosition = INVALID_POSITION;
+        endDragSession();
+    }
 
-                    if (delta != 0) {
-                        ObjectAnimator yTransAnim = ObjectAnimator.ofFloat(child, View.TRANSLATION_Y, delta, 0);
-                        ObjectAnimator xScaleAnim = ObjectAnimator.ofFloat(child, View.SCALE_X, 1 / ratio, 1);
-                        ObjectAnimator yScaleAnim = ObjectAnimator.ofFloat(child, View.SCALE_Y, 1 / ratio, 1);
-                        animations.add(yTransAnim);
-                        animations.add(xScaleAnim);
-                        animations.add(yScaleAnim);
-                    }
+    /**
+     * Adds the rows appended during the drag, in one batch, and shows the bitmaps that
+     * arrived for them meanwhile.
+     */
+    private void endDragSession() {
+        mInDragSession = false;
+        if (!mDeferredItems.isEmpty()) {
+            List<ImageItem> items = new ArrayList<ImageItem>(mDeferredItems);
+            mDeferredItems.clear();
+            addImages(items);
+
+            for (ImageItem item : items) {
+                RowBitmaps bitmaps = mDeferredBitmaps.remove(item);
+                if (bitmaps != null) {
+                    fillImage(item, bitmaps);
                 }
+            }
+        }
 
-                AnimatorSet set = new AnimatorSet();
+        if (!mDeferredRemovals.isEmpty()) {
+            removeImages(new ArrayList<ImageItem>(mDeferredRemovals));
+            mDeferredRemovals.clear();
+        }
 
-                set.setDuration(300);
-                set.playTogether(animations);
-                set.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        childBounds.clear();
-                    }
-                });
-                set.start();
+        if (mOnDragEndedListener != null) {
+            mOnDragEndedListener.onDragEnded();
+        }
+    }
 
-                return true;
-            }
-        });
+    /**
+     * True while the collapse or expand transition is animating.
+     */
+    boolean isTransitionRunning() {
+        return mScaleTransition.isRunning();
+    }
+
+    /**
+     * Starts recording frame timing for drag sessions and reports it to listener after
+     * each one, see {@link DragFrameMetrics}. Pass null to stop recording.
+     */
+    public void setOnDragMetricsListener(DragFrameMetrics.IOnDragMetricsListener listener) {
+        if (mDragMetrics != null) {
+            mDragMetrics.stop();
+        }
+        mDragMetrics = listener != null ? new DragFrameMetrics(this, listener) : null;
     }
 
 
@@ -502,6 +1402,35 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
     }
 
 
+    /**
+     * Lays the pictures out in columnCount columns of square cells while they are collapsed
+     * for a drag, so a long list fits in a few screens. Each picture keeps its aspect ratio
+     * inside its cell. 1, the default, collapses them into a single column instead. Takes
+     * effect from the next drag.
+     */
+    public void setGridColumnCount(int columnCount) {
+        this.mGridColumnCount = Math.max(1, columnCount);
+    }
+
+    public int getGridColumnCount() {
+        return mGridColumnCount;
+    }
+
+    /**
+     * Side of the grid cells while the children are laid out as a grid, otherwise 0.
+     */
+    int getGridCellSize() {
+        return mGridLaidOut ? mGridCellSize : 0;
+    }
+
+    /**
+     * Tells listener whenever a drag has ended and rows may be removed again, after the rows
+     * appended during it have been added.
+     */
+    public void setOnDragEndedListener(IOnDragEndedListener listener) {
+        this.mOnDragEndedListener = listener;
+    }
+
     public void setHoverView(ImageView hoverView) {
         this.mHoverCell = hoverView;
     }
@@ -513,4 +1442,15 @@ public class DraggableImageLayout extends LinearLayout implements View.OnLongCli
     public void setAddPictureView(View addPictureView) {
         this.mAddPictureView = addPictureView;
     }
+
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        this.mBitmapPool = bitmapPool;
+    }
+
+    public interface IOnDragEndedListener {
+        /**
+         * Called on the main thread once {@link #isDragging()} turns false.
+         */
+        void onDragEnded();
+    }
 }
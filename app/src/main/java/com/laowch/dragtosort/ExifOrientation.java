@@ -0,0 +1,231 @@
+package com.laowch.dragtosort;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the EXIF orientation of a JPEG from the start of its stream and describes the
+ * transform that shows the stored pixels upright. Only the segments before the image data
+ * are read, and nothing here touches pixels, so it works the same on and off the device.
+ */
+public class ExifOrientation {
+
+    public static final int NORMAL = 1;
+    public static final int FLIP_HORIZONTAL = 2;
+    public static final int ROTATE_180 = 3;
+    public static final int FLIP_VERTICAL = 4;
+    public static final int TRANSPOSE = 5;
+    public static final int ROTATE_90 = 6;
+    public static final int TRANSVERSE = 7;
+    public static final int ROTATE_270 = 8;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private static final int MARKER_APP1 = 0xe1;
+    private static final int MARKER_SOS = 0xda;
+    private static final int MARKER_EOI = 0xd9;
+
+
+    /**
+     * Returns the orientation of the JPEG in stream, or {@link #NORMAL} when it has none or
+     * is not a JPEG. Stops at the start of the image data.
+     */
+    public static int readOrientation(final InputStream stream) throws IOException {
+        if (stream.read() != 0xff || stream.read() != 0xd8) {
+            return NORMAL;
+        }
+
+        while (true) {
+            if (stream.read() != 0xff) {
+                return NORMAL;
+            }
+            int marker;
+            do {
+                marker = stream.read();
+            } while (marker == 0xff);
+
+            if (marker < 0 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return NORMAL;
+            }
+            if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                // no length follows these
+                continue;
+            }
+
+            final int length = (read(stream) << 8) | read(stream);
+            if (length < 2) {
+                return NORMAL;
+            }
+            if (marker == MARKER_APP1) {
+                final byte[] segment = new byte[length - 2];
+                readFully(stream, segment);
+                final int orientation = parseExif(segment);
+                if (orientation != 0) {
+                    return orientation;
+                }
+                // some other APP1, such as XMP, keep looking
+            } else {
+                skipFully(stream, length - 2);
+            }
+        }
+    }
+
+    /**
+     * Orientation tag of an APP1 segment, or 0 if it is not EXIF or has none.
+     */
+    static int parseExif(final byte[] segment) {
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i'
+                || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return 0;
+        }
+
+        final int tiff = 6;
+        final boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 0;
+        }
+        if (readShort(segment, tiff + 2, littleEndian) != 42) {
+            return 0;
+        }
+
+        final long ifdOffset = readInt(segment, tiff + 4, littleEndian) & 0xffffffffL;
+        final long ifd = tiff + ifdOffset;
+        if (ifd + 2 > segment.length) {
+            return 0;
+        }
+        final int entryCount = readShort(segment, (int) ifd, littleEndian);
+        for (int i = 0; i < entryCount; i++) {
+            final int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (readShort(segment, entry, littleEndian) == TAG_ORIENTATION) {
+                final int orientation = readShort(segment, entry + 8, littleEndian);
+                return orientation >= NORMAL && orientation <= ROTATE_270 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * True when the picture is shown with width and height exchanged.
+     */
+    public static boolean swapsDimensions(final int orientation) {
+        return orientation >= TRANSPOSE && orientation <= ROTATE_270;
+    }
+
+    /**
+     * Fills outAffine with a, b, c, d, e, f such that a stored point x, y of a width x height
+     * image is shown at a * x + b * y + c, d * x + e * y + f. Points are in pixel edge
+     * coordinates, so the image corners map onto the corners of the upright image.
+     */
+    public static void getTransform(final int orientation, final int width, final int height, final float[] outAffine) {
+        float a = 1, b = 0, c = 0, d = 0, e = 1, f = 0;
+        switch (orientation) {
+            case FLIP_HORIZONTAL:
+                a = -1;
+                c = width;
+                break;
+            case ROTATE_180:
+                a = -1;
+                c = width;
+                e = -1;
+                f = height;
+                break;
+            case FLIP_VERTICAL:
+                e = -1;
+                f = height;
+                break;
+            case TRANSPOSE:
+                a = 0;
+                b = 1;
+                d = 1;
+                e = 0;
+                break;
+            case ROTATE_90:
+                a = 0;
+                b = -1;
+                c = height;
+                d = 1;
+                e = 0;
+                break;
+            case TRANSVERSE:
+                a = 0;
+                b = -1;
+                c = height;
+                d = -1;
+                e = 0;
+                f = width;
+                break;
+            case ROTATE_270:
+                a = 0;
+                b = 1;
+                d = -1;
+                e = 0;
+                f = width;
+                break;
+            default:
+                break;
+        }
+        outAffine[0] = a;
+        outAffine[1] = b;
+        outAffine[2] = c;
+        outAffine[3] = d;
+        outAffine[4] = e;
+        outAffine[5] = f;
+    }
+
+    private static int readShort(final byte[] data, final int offset, final boolean littleEndian) {
+        if (offset + 2 > data.length) {
+            return -1;
+        }
+        final int b0 = data[offset] & 0xff;
+        final int b1 = data[offset + 1] & 0xff;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(final byte[] data, final int offset, final boolean littleEndian) {
+        if (offset + 4 > data.length) {
+            return -1;
+        }
+        final int high = readShort(data, offset + (littleEndian ? 2 : 0), littleEndian);
+        final int low = readShort(data, offset + (littleEndian ? 0 : 2), littleEndian);
+        return (high << 16) | low;
+    }
+
+    private static int read(final InputStream stream) throws IOException {
+        final int value = stream.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private static void readFully(final InputStream stream, final byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            final int count = stream.read(buffer, offset, buffer.length - offset);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            offset += count;
+        }
+    }
+
+    private static void skipFully(final InputStream stream, long count) throws IOException {
+        while (count > 0) {
+            final long skipped = stream.skip(count);
+            if (skipped <= 0) {
+                read(stream);
+                count--;
+            } else {
+                count -= skipped;
+            }
+        }
+    }
+}
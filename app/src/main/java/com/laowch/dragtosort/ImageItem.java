@@ -0,0 +1,112 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One picture in a {@link DraggableImageLayout}: where it comes from and the size its row
+ * takes at full width. The row keeps this size whether or not a bitmap is bound to it.
+ */
+public class ImageItem {
+
+    private static final AtomicLong sNextId = new AtomicLong(1);
+
+    private final long mId = sNextId.getAndIncrement();
+
+    private final Uri mUri;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final String mCacheKey;
+
+    private final boolean mTiled;
+
+    // binding state, only touched on the main thread by DraggableImageLayout and VirtualRowBinder
+
+    Bitmap mBoundBitmap;
+
+    /**
+     * True when mBoundBitmap is a private copy made for this row rather than the cached one.
+     */
+    boolean mOwnsBitmap;
+
+    /**
+     * Copy of mBoundBitmap at {@link DraggableImageLayout#THUMBNAIL_SCALE}, shown while the
+     * layout is collapsed. Always private to this row.
+     */
+    Bitmap mThumbnail;
+
+    Future<?> mPendingLoad;
+
+    int mBindGeneration;
+
+    /**
+     * Last {@link VirtualRowBinder} pass that wanted this row bound.
+     */
+    int mWantedPass;
+
+
+    /**
+     * @param pUri      null for images that only exist in memory, those rows are never
+     *                  unbound
+     * @param pCacheKey {@link BitmapMemoryCache} key of the bitmap for this row, or null
+     */
+    public ImageItem(Uri pUri, int pWidth, int pHeight, String pCacheKey) {
+        this(pUri, pWidth, pHeight, pCacheKey, false);
+    }
+
+    /**
+     * @param pTiled true for pictures too tall to bind as one bitmap, their rows decode
+     *               strips on their own, see {@link TiledImageView}
+     */
+    public ImageItem(Uri pUri, int pWidth, int pHeight, String pCacheKey, boolean pTiled) {
+        this.mUri = pUri;
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+        this.mCacheKey = pCacheKey;
+        this.mTiled = pTiled;
+    }
+
+    /**
+     * Unique for the lifetime of the process.
+     */
+    public long getId() {
+        return mId;
+    }
+
+    public Uri getUri() {
+        return mUri;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Width divided by height.
+     */
+    public float getAspectRatio() {
+        return (float) mWidth / mHeight;
+    }
+
+    public String getCacheKey() {
+        return mCacheKey;
+    }
+
+    public boolean isTiled() {
+        return mTiled;
+    }
+
+    public boolean isBound() {
+        return mBoundBitmap != null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.laowch.dragtosort;
+
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves the order of a {@link DraggableImageLayout} as two flat arrays, the uris and the
+ * sizes of their rows, and turns them back into {@link ImageItem}s without touching any
+ * pixels. The restored rows are placeholders at their final size, their bitmaps are bound
+ * from the caches as they scroll into view like any other row.
+ * <p/>
+ * The position of the first visible row is saved as well, so the layout can restore the
+ * rows around it first and the rest after the first frame, see
+ * {@link DraggableImageLayout#restoreImages(List, int)}.
+ */
+public class ImageListState {
+
+    private static final String KEY_URIS = "image_list_uris";
+
+    private static final String KEY_SIZES = "image_list_sizes";
+
+    private static final String KEY_POSITION = "image_list_position";
+
+
+    /**
+     * Writes items to outState. Images without a uri only exist in memory and are left out.
+     */
+    public static void save(final List<ImageItem> items, final Bundle outState) {
+        save(items, 0, outState);
+    }
+
+    /**
+     * Like {@link #save(List, Bundle)}, along with position, the index in items of the first
+     * row on screen.
+     */
+    public static void save(final List<ImageItem> items, final int position, final Bundle outState) {
+        final ArrayList<String> uris = new ArrayList<String>(items.size());
+        final int[] sizes = new int[items.size() * 2];
+        int savedPosition = 0;
+        for (int i = 0; i < items.size(); i++) {
+            final ImageItem item = items.get(i);
+            if (item.getUri() == null) {
+                continue;
+            }
+            if (i <= position) {
+                // the saved list has no rows for in-memory images
+                savedPosition = uris.size();
+            }
+            sizes[uris.size() * 2] = item.getWidth();
+            sizes[uris.size() * 2 + 1] = item.getHeight();
+            uris.add(item.getUri().toString());
+        }
+        outState.putStringArray(KEY_URIS, uris.toArray(new String[uris.size()]));
+        outState.putIntArray(KEY_SIZES, sizes);
+        outState.putInt(KEY_POSITION, savedPosition);
+    }
+
+    /**
+     * Index in the list {@link #restore(Bundle, ImagePipeline)} returns of the first row that
+     * was on screen, 0 if none was saved.
+     */
+    public static int getPosition(final Bundle state) {
+        return state.getInt(KEY_POSITION, 0);
+    }
+
+    /**
+     * The items saved in state, sized for the display width of pipeline, which may differ
+     * from the one they were saved at. Empty if state holds none.
+     */
+    public static List<ImageItem> restore(final Bundle state, final ImagePipeline pipeline) {
+        final String[] uris = state.getStringArray(KEY_URIS);
+        final int[] sizes = state.getIntArray(KEY_SIZES);
+        if (uris == null || sizes == null || sizes.length < uris.length * 2) {
+            return new ArrayList<ImageItem>();
+        }
+
+        final int width = pipeline.getRequestedWidth();
+        final List<ImageItem> items = new ArrayList<ImageItem>(uris.length);
+        for (int i = 0; i < uris.length; i++) {
+            final int savedWidth = sizes[i * 2];
+            final int savedHeight = sizes[i * 2 + 1];
+            if (savedWidth <= 0 || savedHeight <= 0) {
+                continue;
+            }
+            final Uri uri = Uri.parse(uris[i]);
+            final int height = SampleSizeUtils.scaledHeight(savedWidth, savedHeight, width);
+            items.add(new ImageItem(uri, width, height, pipeline.getCacheKey(uri), pipeline.isTall(savedWidth, savedHeight)));
+        }
+        return items;
+    }
+}
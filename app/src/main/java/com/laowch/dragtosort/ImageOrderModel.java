@@ -0,0 +1,147 @@
+package com.laowch.dragtosort;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The sort order of the pictures in a {@link DraggableImageLayout}. The layout renders
+ * from this list and reports drags back as {@link #move(int, int)}, so the current order
+ * can be read without walking views.
+ * <p/>
+ * All methods must be called on the main thread.
+ */
+public class ImageOrderModel {
+
+    private final ArrayList<ImageItem> mItems = new ArrayList<ImageItem>();
+
+    private final ArrayList<IOnOrderChangedListener> mListeners = new ArrayList<IOnOrderChangedListener>();
+
+
+    public int size() {
+        return mItems.size();
+    }
+
+    public ImageItem get(int index) {
+        return mItems.get(index);
+    }
+
+    public int indexOf(ImageItem item) {
+        return mItems.indexOf(item);
+    }
+
+    /**
+     * The items in their current order. The list is read-only and reflects later changes.
+     */
+    public List<ImageItem> getItems() {
+        return Collections.unmodifiableList(mItems);
+    }
+
+    public void add(ImageItem item) {
+        insert(mItems.size(), item);
+    }
+
+    public void insert(int index, ImageItem item) {
+        mItems.add(index, item);
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onItemInserted(index, item);
+        }
+    }
+
+    /**
+     * Inserts items in order starting at index, shifting the rest of the list once rather
+     * than once per item. Listeners hear about each insertion, front to back.
+     */
+    public void insertAll(int index, List<ImageItem> items) {
+        mItems.addAll(index, items);
+        for (int n = 0; n < items.size(); n++) {
+            for (int i = 0; i < mListeners.size(); i++) {
+                mListeners.get(i).onItemInserted(index + n, items.get(n));
+            }
+        }
+    }
+
+    public ImageItem remove(int index) {
+        final ImageItem item = mItems.remove(index);
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onItemRemoved(index, item);
+        }
+        return item;
+    }
+
+    /**
+     * Removes every item of items that is in the list, in one compacting pass over it.
+     * Listeners hear about each removal from the back of the list to the front, so every
+     * index they get is still valid for a list, or a row of views, that has not seen the
+     * removals after it yet.
+     *
+     * @return how many items were removed
+     */
+    public int removeAll(Collection<ImageItem> items) {
+        final IdentityHashMap<ImageItem, Boolean> wanted = new IdentityHashMap<ImageItem, Boolean>(items.size() * 2);
+        for (ImageItem item : items) {
+            wanted.put(item, Boolean.TRUE);
+        }
+
+        final int[] removedIndices = new int[Math.min(items.size(), mItems.size())];
+        final ImageItem[] removedItems = new ImageItem[removedIndices.length];
+        int removedCount = 0;
+        int kept = 0;
+        for (int i = 0; i < mItems.size(); i++) {
+            final ImageItem item = mItems.get(i);
+            if (wanted.remove(item) != null) {
+                removedIndices[removedCount] = i;
+                removedItems[removedCount] = item;
+                removedCount++;
+            } else {
+                mItems.set(kept++, item);
+            }
+        }
+        mItems.subList(kept, mItems.size()).clear();
+
+        for (int n = removedCount - 1; n >= 0; n--) {
+            for (int i = 0; i < mListeners.size(); i++) {
+                mListeners.get(i).onItemRemoved(removedIndices[n], removedItems[n]);
+            }
+        }
+        return removedCount;
+    }
+
+    /**
+     * Moves the item at from so that it ends up at index to. A move to a neighbouring
+     * index, which is what a drag produces, is a constant time swap.
+     */
+    public void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+
+        if (Math.abs(from - to) == 1) {
+            Collections.swap(mItems, from, to);
+        } else {
+            mItems.add(to, mItems.remove(from));
+        }
+
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onItemMoved(from, to);
+        }
+    }
+
+    public void addOnOrderChangedListener(IOnOrderChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnOrderChangedListener(IOnOrderChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public interface IOnOrderChangedListener {
+        void onItemInserted(int index, ImageItem item);
+
+        void onItemRemoved(int index, ImageItem item);
+
+        void onItemMoved(int from, int to);
+    }
+}
@@ -0,0 +1,342 @@
+package com.laowch.dragtosort;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The lookup chain every picture goes through at a given display width: the
+ * {@link BitmapMemoryCache}, then the {@link DiskThumbnailCache}, and only then a
+ * subsampled decode of the uri, which is written back to both caches.
+ * <p/>
+ * A uri already being loaded is not loaded again: callers that ask for it meanwhile, such
+ * as the import scheduler and the row binder, wait for the same result.
+ * <p/>
+ * Pictures that would be taller than {@link #TALL_IMAGE_MAX_HEIGHT} at the display width
+ * do not go through the chain at all, they are shown in strips by {@link TiledImageView}.
+ */
+public class ImagePipeline {
+
+    /**
+     * Tallest a picture may be at the display width to be held as one bitmap. Stays within
+     * the smallest maximum texture size of the supported devices.
+     */
+    public static final int TALL_IMAGE_MAX_HEIGHT = 2048;
+
+    /**
+     * Bytes of header {@link #probeSize(Uri)} reads the orientation from before it rewinds,
+     * enough for the EXIF block and its embedded thumbnail.
+     */
+    private static final int PROBE_MARK_LIMIT = 128 * 1024;
+
+    private final Context mContext;
+
+    private final int mRequestedWidth;
+
+    private final BitmapMemoryCache mMemoryCache;
+
+    private final DiskThumbnailCache mDiskCache;
+
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Peak bytes assumed for one decode, a 4:3 photo four times the requested width.
+     */
+    private final long mDecodeBytesEstimate;
+
+    private volatile MemoryGovernor mMemoryGovernor;
+
+    /**
+     * Cache key to the load running for it, guarded by itself.
+     */
+    private final HashMap<String, FutureTask<Bitmap>> mPendingLoads = new HashMap<String, FutureTask<Bitmap>>();
+
+    /**
+     * Uris that could not be opened at all, such as restored ones whose permission grant is
+     * gone. They are not tried again.
+     */
+    private final Set<Uri> mUnreadableUris = Collections.synchronizedSet(new HashSet<Uri>());
+
+
+    public ImagePipeline(Context pContext, int pRequestedWidth, BitmapMemoryCache pMemoryCache,
+                         DiskThumbnailCache pDiskCache, BitmapPool pBitmapPool) {
+        this.mContext = pContext.getApplicationContext();
+        this.mRequestedWidth = pRequestedWidth;
+        this.mMemoryCache = pMemoryCache;
+        this.mDiskCache = pDiskCache;
+        this.mBitmapPool = pBitmapPool;
+        this.mDecodeBytesEstimate = SampleSizeUtils.estimatePeakBytes(pRequestedWidth * 4, pRequestedWidth * 16 / 3,
+                pRequestedWidth, SampleSizeUtils.BYTES_PER_PIXEL_ARGB_8888);
+    }
+
+    public int getRequestedWidth() {
+        return mRequestedWidth;
+    }
+
+    public BitmapMemoryCache getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Decodes report to governor while they run, and the binder and import scheduler using
+     * this pipeline follow its stage. Null, the default, disables all of that.
+     */
+    public void setMemoryGovernor(final MemoryGovernor governor) {
+        this.mMemoryGovernor = governor;
+    }
+
+    public MemoryGovernor getMemoryGovernor() {
+        return mMemoryGovernor;
+    }
+
+    public String getCacheKey(final Uri pUri) {
+        return BitmapMemoryCache.key(pUri, mRequestedWidth, 0, BitmapMemoryCache.TRANSFORM_FIT_WIDTH);
+    }
+
+    /**
+     * Reads only the header of pUri. Returns its width and height as shown, after its EXIF
+     * orientation, or null if it cannot be read. Does I/O, never call it on the main thread.
+     * <p/>
+     * Opens pUri once, the orientation is read ahead of the bounds within a mark, and only
+     * a header longer than {@link #PROBE_MARK_LIMIT} makes it open pUri again.
+     */
+    public int[] probeSize(final Uri pUri) {
+        InputStream stream = null;
+        try {
+            stream = new BufferedInputStream(mContext.getContentResolver().openInputStream(pUri));
+            stream.mark(PROBE_MARK_LIMIT);
+            final int orientation = ExifOrientation.readOrientation(stream);
+            try {
+                stream.reset();
+            } catch (IOException ex) {
+                stream.close();
+                stream = new BufferedInputStream(mContext.getContentResolver().openInputStream(pUri));
+            }
+
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(stream, null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            if (ExifOrientation.swapsDimensions(orientation)) {
+                return new int[]{options.outHeight, options.outWidth};
+            }
+            return new int[]{options.outWidth, options.outHeight};
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * True if a srcWidth x srcHeight picture is too tall to show as one bitmap at the
+     * display width.
+     */
+    public boolean isTall(final int srcWidth, final int srcHeight) {
+        return SampleSizeUtils.scaledHeight(srcWidth, srcHeight, mRequestedWidth) > TALL_IMAGE_MAX_HEIGHT;
+    }
+
+    /**
+     * Runs the whole chain, or waits for the load of pUri already running on another
+     * thread. Does disk and content provider I/O, never call it on the main thread. Returns
+     * null if the image cannot be read.
+     */
+    public Bitmap load(final Uri pUri) {
+        final String cacheKey = getCacheKey(pUri);
+
+        final Bitmap cached = mMemoryCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        if (mUnreadableUris.contains(pUri)) {
+            return null;
+        }
+
+        FutureTask<Bitmap> task;
+        boolean owner = false;
+        synchronized (mPendingLoads) {
+            task = mPendingLoads.get(cacheKey);
+            if (task == null) {
+                // a load may have finished since the first look
+                final Bitmap bitmap = mMemoryCache.get(cacheKey);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+                task = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() {
+                        return loadUncached(pUri, cacheKey);
+                    }
+                });
+                mPendingLoads.put(cacheKey, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (mPendingLoads) {
+                    mPendingLoads.remove(cacheKey);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The disk cache and the decode, counted by the governor once however many callers
+     * wait for them. Puts the result in the memory cache before returning it.
+     */
+    private Bitmap loadUncached(final Uri pUri, final String cacheKey) {
+        Bitmap bitmap;
+        final MemoryGovernor governor = mMemoryGovernor;
+        if (governor != null) {
+            governor.onDecodeStarted(mDecodeBytesEstimate);
+        }
+        try {
+            bitmap = mDiskCache.get(cacheKey);
+            if (bitmap == null) {
+                bitmap = decode(pUri);
+                if (bitmap != null) {
+                    mDiskCache.putAsync(cacheKey, bitmap);
+                }
+            }
+        } catch (OutOfMemoryError error) {
+            bitmap = null;
+        } finally {
+            if (governor != null) {
+                governor.onDecodeFinished(mDecodeBytesEstimate);
+            }
+        }
+
+        if (bitmap != null) {
+            mMemoryCache.put(cacheKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * True once a load found that pUri cannot be opened at all, as opposed to a picture that
+     * failed to decode. Rows of such uris will never show anything.
+     */
+    public boolean isUnreadable(final Uri pUri) {
+        return mUnreadableUris.contains(pUri);
+    }
+
+    /**
+     * Runs {@link #load(Uri)} for pItem and draws what its row shows from the result, see
+     * {@link RowBitmaps}. Does I/O and draws, never call it on the main thread. Returns null
+     * if the image cannot be read.
+     */
+    public RowBitmaps loadRow(final ImageItem pItem) {
+        final Bitmap bitmap = load(pItem.getUri());
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            return RowBitmaps.create(bitmap, pItem.getWidth(), pItem.getHeight(), mBitmapPool);
+        } catch (OutOfMemoryError error) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes pUri down to the display width on the calling thread, or returns null if it
+     * cannot be read.
+     */
+    private Bitmap decode(final Uri pUri) {
+        final UriDescriptor descriptor = new UriDescriptor(mContext, pUri);
+        try {
+            final FileDescriptor fileDescriptor;
+            try {
+                fileDescriptor = descriptor.reopen();
+            } catch (FileNotFoundException ex) {
+                mUnreadableUris.add(pUri);
+                return null;
+            } catch (SecurityException ex) {
+                // the permission grant of a restored uri does not outlive the process
+                mUnreadableUris.add(pUri);
+                return null;
+            }
+            return BitmapUtils.decodeSampledBitmap(fileDescriptor, mRequestedWidth, mBitmapPool, descriptor);
+        } catch (IOException ex) {
+            return null;
+        } catch (RuntimeException ex) {
+            // providers throw SecurityException and friends for uris we lost access to
+            return null;
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Keeps at most one descriptor of the uri open, closing the last one on every reopen.
+     */
+    private static class UriDescriptor implements BitmapUtils.IReopener {
+        private final Context mContext;
+
+        private final Uri mUri;
+
+        private ParcelFileDescriptor mParcelFileDescriptor;
+
+        UriDescriptor(Context pContext, Uri pUri) {
+            this.mContext = pContext;
+            this.mUri = pUri;
+        }
+
+        @Override
+        public FileDescriptor reopen() throws IOException {
+            close();
+            mParcelFileDescriptor = mContext.getContentResolver().openFileDescriptor(mUri, "r");
+            if (mParcelFileDescriptor == null) {
+                throw new FileNotFoundException(mUri.toString());
+            }
+            return mParcelFileDescriptor.getFileDescriptor();
+        }
+
+        void close() {
+            if (mParcelFileDescriptor != null) {
+                try {
+                    mParcelFileDescriptor.close();
+                } catch (IOException ignored) {
+                }
+                mParcelFileDescriptor = null;
+            }
+        }
+    }
+}
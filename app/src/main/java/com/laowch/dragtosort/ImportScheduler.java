@@ -0,0 +1,384 @@
+package com.laowch.dragtosort;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports picked images in two steps. First the headers are read on the worker threads,
+ * one image per task, and handed back as {@link ImageItem}s sized for the display in chunks
+ * as they become ready, so placeholder rows appear while the rest of a large batch is still
+ * being probed. Then the images are decoded on the same workers, drawn at the size of their
+ * rows there as well, and handed back on the main thread in the order they were submitted,
+ * not in the order they finish, to fill those rows.
+ * <p/>
+ * Each image goes through the {@link ImagePipeline}, so cached images are delivered without
+ * touching their uri, though still from a background thread. Images too tall to hold as one
+ * bitmap are not decoded at all, their items are tiled, see
+ * {@link ImagePipeline#isTall(int, int)}.
+ * <p/>
+ * Work is only dispatched while fewer than {@link #getMaxOutstanding()} images are decoding
+ * or waiting for delivery, so a slow first image never lets decoded bitmaps pile up
+ * behind it beyond the memory budget.
+ * <p/>
+ * While the {@link MemoryGovernor} of the pipeline, if any, is at
+ * {@link MemoryGovernor#STAGE_PAUSE_IMPORTS}, no new work is dispatched at all. Work already
+ * running is still delivered, and dispatching resumes once the stage drops.
+ */
+public class ImportScheduler implements MemoryGovernor.IOnStageChangedListener {
+
+    /**
+     * Share of the heap that decoded-but-not-yet-attached images may use.
+     */
+    private static final int MEMORY_BUDGET_DIVISOR = 8;
+
+    /**
+     * How often a paused scheduler asks the governor again, trim holds expire on their own.
+     */
+    private static final long PAUSE_RECHECK_MILLIS = 1000;
+
+    private final ImagePipeline mImagePipeline;
+
+    private final IOnImageImportedListener mOnImageImportedListener;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final int mMaxOutstanding;
+
+    private final LinkedList<ImageItem> mWaitingItems = new LinkedList<ImageItem>();
+
+    private final SparseArray<DecodeResult> mDecodedResults = new SparseArray<DecodeResult>();
+
+    private final SparseArray<ProbeResult> mProbedResults = new SparseArray<ProbeResult>();
+
+    private int mNextProbeSequence = 0;
+
+    private int mNextProbedSequence = 0;
+
+    private boolean mProbedDeliveryPosted = false;
+
+    private int mNextSubmitSequence = 0;
+
+    private int mNextDeliverSequence = 0;
+
+    private int mOutstandingCount = 0;
+
+    private volatile boolean mCancelled = false;
+
+    private final Runnable mRecheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Posted once for any number of probes finishing together, so they go out as one chunk.
+     */
+    private final Runnable mDeliverProbedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mProbedDeliveryPosted = false;
+            deliverProbed();
+        }
+    };
+
+
+    public ImportScheduler(ImagePipeline pImagePipeline, IOnImageImportedListener pOnImageImportedListener) {
+        this.mImagePipeline = pImagePipeline;
+        this.mOnImageImportedListener = pOnImageImportedListener;
+
+        // assume a 4:3 portrait photo at the requested width
+        final int requestedWidth = pImagePipeline.getRequestedWidth();
+        final int requestedHeight = requestedWidth * 4 / 3;
+        final long bytesPerResult = (long) requestedWidth * requestedHeight * SampleSizeUtils.BYTES_PER_PIXEL_ARGB_8888;
+        final long bytesPerDecode = SampleSizeUtils.estimatePeakBytes(requestedWidth * 4, requestedHeight * 4,
+                requestedWidth, SampleSizeUtils.BYTES_PER_PIXEL_ARGB_8888);
+        final long budget = Runtime.getRuntime().maxMemory() / MEMORY_BUDGET_DIVISOR;
+
+        this.mMaxOutstanding = (int) Math.max(1, budget / bytesPerResult);
+        final int threadCount = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                Math.min(mMaxOutstanding, budget / bytesPerDecode)));
+
+        this.mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory("ImportScheduler"));
+        this.mExecutor.allowCoreThreadTimeOut(true);
+
+        if (pImagePipeline.getMemoryGovernor() != null) {
+            pImagePipeline.getMemoryGovernor().addOnStageChangedListener(this);
+        }
+    }
+
+    /**
+     * Queues the uris for probing and then decoding. Must be called on the main thread.
+     */
+    public void submit(final List<Uri> pUris) {
+        if (mCancelled) {
+            return;
+        }
+        for (Uri uri : pUris) {
+            mExecutor.execute(new ProbeRunnable(mNextProbeSequence++, uri));
+        }
+    }
+
+    private void onProbed(final ProbeResult pResult) {
+        if (mCancelled) {
+            return;
+        }
+
+        mProbedResults.put(pResult.mSequence, pResult);
+        if (!mProbedDeliveryPosted) {
+            mProbedDeliveryPosted = true;
+            mHandler.post(mDeliverProbedRunnable);
+        }
+    }
+
+    /**
+     * Hands every probed item that follows the last one handed out to the listener as one
+     * chunk, then queues them for decoding.
+     */
+    private void deliverProbed() {
+        final List<ImageItem> items = new ArrayList<ImageItem>();
+        int failedCount = 0;
+        ProbeResult next;
+        while ((next = mProbedResults.get(mNextProbedSequence)) != null) {
+            mProbedResults.remove(mNextProbedSequence);
+            mNextProbedSequence++;
+            if (next.mItem != null) {
+                items.add(next.mItem);
+            } else {
+                failedCount++;
+            }
+        }
+        if (items.isEmpty() && failedCount == 0) {
+            return;
+        }
+
+        if (mOnImageImportedListener != null) {
+            mOnImageImportedListener.onImagesProbed(items, failedCount);
+        }
+        for (ImageItem item : items) {
+            if (!item.isTiled()) {
+                mWaitingItems.add(item);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Drops everything still queued or decoded and stops the worker threads. The scheduler
+     * cannot be reused afterwards. Decoded bitmaps are not recycled, the memory cache may
+     * still hand them out, only the row copies made from them go back to the pool.
+     */
+    public void cancel() {
+        mCancelled = true;
+        if (mImagePipeline.getMemoryGovernor() != null) {
+            mImagePipeline.getMemoryGovernor().removeOnStageChangedListener(this);
+        }
+        mWaitingItems.clear();
+        mExecutor.shutdownNow();
+        mHandler.removeCallbacks(mRecheckRunnable);
+        mHandler.removeCallbacks(mDeliverProbedRunnable);
+        // decodes already posted still run, onDecoded gives their row copies back
+        for (int i = 0; i < mDecodedResults.size(); i++) {
+            if (mDecodedResults.valueAt(i).mBitmaps != null) {
+                mDecodedResults.valueAt(i).mBitmaps.release(mImagePipeline.getBitmapPool());
+            }
+        }
+        mDecodedResults.clear();
+        mProbedResults.clear();
+    }
+
+    public int getMaxOutstanding() {
+        return mMaxOutstanding;
+    }
+
+    public int getThreadCount() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    @Override
+    public void onMemoryStageChanged(int pStage) {
+        if (!mCancelled && pStage < MemoryGovernor.STAGE_PAUSE_IMPORTS) {
+            drain();
+        }
+    }
+
+    /**
+     * True while the memory governor holds back new work.
+     */
+    public boolean isPaused() {
+        final MemoryGovernor governor = mImagePipeline.getMemoryGovernor();
+        return governor != null && governor.getStage() >= MemoryGovernor.STAGE_PAUSE_IMPORTS;
+    }
+
+    private void drain() {
+        deliverReady();
+        dispatch();
+    }
+
+    /**
+     * Starts decodes while the budget allows. Cached images go to the workers as well, their
+     * row copies are drawn there.
+     */
+    private void dispatch() {
+        final MemoryGovernor governor = mImagePipeline.getMemoryGovernor();
+        if (governor != null && !mWaitingItems.isEmpty()
+                && governor.update(SystemClock.uptimeMillis()) >= MemoryGovernor.STAGE_PAUSE_IMPORTS) {
+            mHandler.removeCallbacks(mRecheckRunnable);
+            mHandler.postDelayed(mRecheckRunnable, PAUSE_RECHECK_MILLIS);
+            return;
+        }
+
+        while (!mCancelled && mOutstandingCount < mMaxOutstanding && !mWaitingItems.isEmpty()) {
+            final int sequence = mNextSubmitSequence++;
+            final ImageItem item = mWaitingItems.removeFirst();
+            mOutstandingCount++;
+            mExecutor.execute(new DecodeRunnable(sequence, item));
+        }
+    }
+
+    private void onDecoded(final DecodeResult pResult) {
+        if (mCancelled) {
+            if (pResult.mBitmaps != null) {
+                pResult.mBitmaps.release(mImagePipeline.getBitmapPool());
+            }
+            return;
+        }
+
+        mDecodedResults.put(pResult.mSequence, pResult);
+        drain();
+    }
+
+    private void deliverReady() {
+        DecodeResult next;
+        while ((next = mDecodedResults.get(mNextDeliverSequence)) != null) {
+            mDecodedResults.remove(mNextDeliverSequence);
+            mNextDeliverSequence++;
+            mOutstandingCount--;
+
+            if (mOnImageImportedListener != null) {
+                mOnImageImportedListener.onImageImported(next.mItem, next.mBitmaps);
+            }
+        }
+    }
+
+
+    private static class DecodeResult {
+        final int mSequence;
+        final ImageItem mItem;
+        final RowBitmaps mBitmaps;
+
+        DecodeResult(int pSequence, ImageItem pItem, RowBitmaps pBitmaps) {
+            this.mSequence = pSequence;
+            this.mItem = pItem;
+            this.mBitmaps = pBitmaps;
+        }
+    }
+
+    private static class ProbeResult {
+        final int mSequence;
+        /**
+         * Null if the header could not be read.
+         */
+        final ImageItem mItem;
+
+        ProbeResult(int pSequence, ImageItem pItem) {
+            this.mSequence = pSequence;
+            this.mItem = pItem;
+        }
+    }
+
+    private class ProbeRunnable implements Runnable {
+        final int mSequence;
+        final Uri mUri;
+
+        ProbeRunnable(int pSequence, Uri pUri) {
+            this.mSequence = pSequence;
+            this.mUri = pUri;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            final int width = mImagePipeline.getRequestedWidth();
+            final int[] size = mImagePipeline.probeSize(mUri);
+            ImageItem item = null;
+            if (size != null) {
+                final int height = SampleSizeUtils.scaledHeight(size[0], size[1], width);
+                item = mImagePipeline.isTall(size[0], size[1])
+                        ? new ImageItem(mUri, width, height, null, true)
+                        : new ImageItem(mUri, width, height, mImagePipeline.getCacheKey(mUri));
+            }
+
+            // a failure is delivered as well, the chunks after it would wait for it otherwise
+            final ProbeResult result = new ProbeResult(mSequence, item);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onProbed(result);
+                }
+            });
+        }
+    }
+
+    private class DecodeRunnable implements Runnable {
+        final int mSequence;
+        final ImageItem mItem;
+
+        DecodeRunnable(int pSequence, ImageItem pItem) {
+            this.mSequence = pSequence;
+            this.mItem = pItem;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            // a failure is delivered as null rather than stalling every image queued behind it
+            final DecodeResult result = new DecodeResult(mSequence, mItem, mImagePipeline.loadRow(mItem));
+
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onDecoded(result);
+                }
+            });
+        }
+    }
+
+    public interface IOnImageImportedListener {
+        /**
+         * Called on the main thread as the headers are read, with the next chunk of items
+         * sized for the display, in submission order across chunks and batches. Each item
+         * comes before its image is decoded. Tiled items are complete, the others are
+         * followed by {@link #onImageImported(ImageItem, RowBitmaps)}.
+         *
+         * @param pFailedCount images of this chunk left out because they could not be read
+         */
+        void onImagesProbed(List<ImageItem> pItems, int pFailedCount);
+
+        /**
+         * Called on the main thread, in submission order. pBitmaps is null if the image
+         * could not be decoded. Bitmaps that no row takes should go back to the pool, see
+         * {@link DraggableImageLayout#fillImage(ImageItem, RowBitmaps)}.
+         */
+        void onImageImported(ImageItem pItem, RowBitmaps pBitmaps);
+    }
+}
@@ -1,19 +1,22 @@
 package com.laowch.dragtosort;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.content.ClipData;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.app.ActionBarActivity;
 import android.util.DisplayMetrics;
 import android.view.View;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.Toast;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -24,8 +27,21 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
 
     private static final int REQUEST_CODE_TAKEN_PHOTO_GALLERY = 0x02;
 
+    private static final int DRAG_GRID_COLUMN_COUNT = 3;
+
     DraggableImageLayout imageLayout;
 
+    ImagePipeline imagePipeline;
+
+    ImportScheduler importScheduler;
+
+    MemoryGovernor memoryGovernor;
+
+    /**
+     * Rows whose image could not be decoded during a drag, removed once it ends.
+     */
+    final List<ImageItem> failedItems = new ArrayList<ImageItem>();
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,6 +52,96 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
         imageLayout.setHoverView((ImageView) findViewById(R.id.hover_view));
         imageLayout.setScrollView((ScrollView) findViewById(R.id.scroll_view));
         imageLayout.setAddPictureView(findViewById(R.id.add_picture));
+        imageLayout.setBitmapPool(BitmapPool.getInstance());
+        imageLayout.setGridColumnCount(DRAG_GRID_COLUMN_COUNT);
+
+        imagePipeline = new ImagePipeline(this, DisplayUtils.getScreenWidth(this), BitmapMemoryCache.getInstance(),
+                DiskThumbnailCache.getInstance(this), BitmapPool.getInstance());
+
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        memoryGovernor = new MemoryGovernor(MemoryGovernor.getBudgetForMemoryClass(activityManager.getMemoryClass()));
+        memoryGovernor.addByteSource(BitmapMemoryCache.getInstance());
+        memoryGovernor.addByteSource(BitmapPool.getInstance());
+        memoryGovernor.addByteSource(new MemoryGovernor.IByteSource() {
+            @Override
+            public long getByteCount() {
+                return imageLayout.getBoundByteCount();
+            }
+        });
+        imagePipeline.setMemoryGovernor(memoryGovernor);
+
+        imageLayout.setVirtualized(true, imagePipeline);
+
+        imageLayout.setOnDragEndedListener(new DraggableImageLayout.IOnDragEndedListener() {
+            @Override
+            public void onDragEnded() {
+                if (!failedItems.isEmpty()) {
+                    imageLayout.removeImages(failedItems);
+                    failedItems.clear();
+                }
+            }
+        });
+
+        importScheduler = new ImportScheduler(imagePipeline, new ImportScheduler.IOnImageImportedListener() {
+            @Override
+            public void onImagesProbed(List<ImageItem> pItems, int pFailedCount) {
+                if (pFailedCount > 0) {
+                    Toast.makeText(MainActivity.this, "image decode error", Toast.LENGTH_LONG).show();
+                }
+                imageLayout.addImages(pItems);
+            }
+
+            @Override
+            public void onImageImported(ImageItem pItem, RowBitmaps pBitmaps) {
+                if (pBitmaps == null) {
+                    Toast.makeText(MainActivity.this, "image decode error", Toast.LENGTH_LONG).show();
+                    if (imageLayout.isDragging()) {
+                        // rows must not go away under a drag, removed once it ends
+                        failedItems.add(pItem);
+                    } else {
+                        imageLayout.removeImages(Collections.singletonList(pItem));
+                    }
+                    return;
+                }
+                imageLayout.fillImage(pItem, pBitmaps);
+            }
+        });
+
+        if (savedInstanceState != null) {
+            // placeholders only, the rows near the viewport load from the caches
+            imageLayout.restoreImages(ImageListState.restore(savedInstanceState, imagePipeline),
+                    ImageListState.getPosition(savedInstanceState));
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        ImageListState.save(imageLayout.getOrderModel().getItems(), imageLayout.getFirstVisibleRow(), outState);
+    }
+
+    @Override
+    protected void onDestroy() {
+        importScheduler.cancel();
+        super.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BitmapMemoryCache.getInstance().onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            BitmapPool.getInstance().clear();
+        }
+        memoryGovernor.onTrimMemory(level, SystemClock.uptimeMillis());
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        BitmapMemoryCache.getInstance().evictAll();
+        BitmapPool.getInstance().clear();
+        memoryGovernor.onLowMemory(SystemClock.uptimeMillis());
     }
 
 
@@ -78,42 +184,25 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
                 case REQUEST_CODE_TAKEN_PHOTO_CAMERA: {
                     if (data != null) {
                         final Bitmap bitmap = (Bitmap) data.getExtras().get("data");
-                        onImageTaken(bitmap);
+                        onImageTaken(null, bitmap);
                         break;
                     }
                 }
                 case REQUEST_CODE_TAKEN_PHOTO_GALLERY: {
                     if (data != null) {
+                        List<Uri> uriList = new ArrayList<Uri>();
                         if (data.getParcelableArrayListExtra("uris") != null) {
-                            List<Uri> uriList = data.getParcelableArrayListExtra("uris");
-                            for (int i = 0; i < uriList.size(); i++) {
-
-                                new GetBitmapFromUriTask(this, uriList.get(i), new GetBitmapFromUriTask.IOnImageTakenListener() {
-                                    @Override
-                                    public void onImageTaken(final Bitmap pBitmap) {
-                                        MainActivity.this.onImageTaken(pBitmap);
-                                    }
-                                }).execute();
-                            }
+                            List<Uri> uris = data.getParcelableArrayListExtra("uris");
+                            uriList.addAll(uris);
                         } else if (data.getData() == null) {
                             ClipData clipData = data.getClipData();
                             for (int i = 0; i < clipData.getItemCount(); i++) {
-                                ClipData.Item item = clipData.getItemAt(i);
-                                new GetBitmapFromUriTask(this, item.getUri(), new GetBitmapFromUriTask.IOnImageTakenListener() {
-                                    @Override
-                                    public void onImageTaken(final Bitmap pBitmap) {
-                                        MainActivity.this.onImageTaken(pBitmap);
-                                    }
-                                }).execute();
+                                uriList.add(clipData.getItemAt(i).getUri());
                             }
                         } else {
-                            new GetBitmapFromUriTask(this, data.getData(), new GetBitmapFromUriTask.IOnImageTakenListener() {
-                                @Override
-                                public void onImageTaken(final Bitmap pBitmap) {
-                                    MainActivity.this.onImageTaken(pBitmap);
-                                }
-                            }).execute();
+                            uriList.add(data.getData());
                         }
+                        importScheduler.submit(uriList);
 
                         break;
                     }
@@ -123,7 +212,7 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
     }
 
 
-    private void onImageTaken(Bitmap pBitmap) {
+    private void onImageTaken(Uri pUri, Bitmap pBitmap) {
         if (pBitmap == null) {
             Toast.makeText(this, "image decode error", Toast.LENGTH_LONG).show();
             return;
@@ -133,12 +222,8 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
         int width = dm.widthPixels;
         int height = pBitmap.getHeight() * dm.widthPixels / pBitmap.getWidth();
 
-        ImageView imageView = new ImageView(this);
-        imageView.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
-        imageView.setLayoutParams(new LinearLayout.LayoutParams(width, height));
-        imageView.setImageBitmap(BitmapUtils.resizeBitmap(pBitmap, width, height));
-
-        imageLayout.addView(imageView);
+        String cacheKey = pUri != null ? imagePipeline.getCacheKey(pUri) : null;
+        imageLayout.addImage(new ImageItem(pUri, width, height, cacheKey), pBitmap);
     }
 
 
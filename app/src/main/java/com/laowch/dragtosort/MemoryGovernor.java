@@ -0,0 +1,243 @@
+package com.laowch.dragtosort;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds up the bytes held for pictures, by the caches, the bound rows and the decodes in
+ * flight, against one budget, and turns the result into a stage of degradation that the
+ * rest of the pipeline follows:
+ * <ol>
+ * <li>{@link #STAGE_NO_PREFETCH}: rows ahead of the viewport are no longer prefetched.</li>
+ * <li>{@link #STAGE_THUMBNAILS}: rows bound off screen keep only their thumbnail.</li>
+ * <li>{@link #STAGE_PAUSE_IMPORTS}: no new import decodes are started.</li>
+ * </ol>
+ * Each stage includes the ones before it. A stage is left only once usage has dropped
+ * clearly below where it started, so the pipeline does not flip back and forth around a
+ * threshold. Trim callbacks from the system raise the stage on their own for
+ * {@link #TRIM_HOLD_MILLIS}, whatever the usage.
+ * <p/>
+ * The stage only changes in {@link #update(long)}, on the main thread. Decodes may report
+ * from any thread.
+ */
+public class MemoryGovernor {
+
+    public static final int STAGE_NORMAL = 0;
+    public static final int STAGE_NO_PREFETCH = 1;
+    public static final int STAGE_THUMBNAILS = 2;
+    public static final int STAGE_PAUSE_IMPORTS = 3;
+
+    /**
+     * Share of {@link android.app.ActivityManager#getMemoryClass()} the pictures may use, the
+     * rest is left to views, the framework and the app itself.
+     */
+    public static final float MEMORY_CLASS_FRACTION = 0.5f;
+
+    /**
+     * How long a trim callback keeps the stage it asked for.
+     */
+    public static final long TRIM_HOLD_MILLIS = 10000;
+
+    /**
+     * Share of the budget in use at which each stage starts, by stage.
+     */
+    private static final float[] STAGE_THRESHOLDS = {0f, 0.7f, 0.85f, 0.95f};
+
+    /**
+     * How far below its threshold usage must drop to leave a stage.
+     */
+    private static final float HYSTERESIS = 0.1f;
+
+    private final long mBudgetBytes;
+
+    private final List<IByteSource> mByteSources = new ArrayList<IByteSource>();
+
+    private final List<IOnStageChangedListener> mListeners = new ArrayList<IOnStageChangedListener>();
+
+    private final AtomicLong mInFlightBytes = new AtomicLong();
+
+    private int mStage = STAGE_NORMAL;
+
+    private int mTrimStage = STAGE_NORMAL;
+
+    private long mTrimUntilMillis;
+
+    private long mUsedBytes;
+
+    private long mPeakBytes;
+
+    private int mStageChangeCount;
+
+    private int mTrimCount;
+
+
+    public MemoryGovernor(final long budgetBytes) {
+        this.mBudgetBytes = Math.max(1, budgetBytes);
+    }
+
+    /**
+     * @param memoryClassMegabytes as returned by
+     *                             {@link android.app.ActivityManager#getMemoryClass()}
+     */
+    public static long getBudgetForMemoryClass(final int memoryClassMegabytes) {
+        return (long) (memoryClassMegabytes * 1024L * 1024L * MEMORY_CLASS_FRACTION);
+    }
+
+    public void addByteSource(final IByteSource source) {
+        mByteSources.add(source);
+    }
+
+    public void addOnStageChangedListener(final IOnStageChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeOnStageChangedListener(final IOnStageChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * A decode expected to hold bytes at its peak is starting. Any thread.
+     */
+    public void onDecodeStarted(final long bytes) {
+        mInFlightBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Pairs with {@link #onDecodeStarted(long)}, whether or not the decode succeeded.
+     */
+    public void onDecodeFinished(final long bytes) {
+        mInFlightBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Re-reads every byte source and moves to the stage the usage calls for, telling the
+     * listeners if it changed.
+     *
+     * @param nowMillis monotonic time, e.g. SystemClock.uptimeMillis()
+     * @return the current stage
+     */
+    public int update(final long nowMillis) {
+        long used = mInFlightBytes.get();
+        for (int i = 0; i < mByteSources.size(); i++) {
+            used += mByteSources.get(i).getByteCount();
+        }
+        mUsedBytes = used;
+        mPeakBytes = Math.max(mPeakBytes, used);
+
+        final float fill = (float) used / mBudgetBytes;
+        int stage = STAGE_NORMAL;
+        while (stage < STAGE_PAUSE_IMPORTS && fill >= STAGE_THRESHOLDS[stage + 1]) {
+            stage++;
+        }
+        // stepping down, stay in each stage until clearly below it
+        while (stage < mStage && fill >= STAGE_THRESHOLDS[stage + 1] - HYSTERESIS) {
+            stage++;
+        }
+
+        if (nowMillis < mTrimUntilMillis) {
+            stage = Math.max(stage, mTrimStage);
+        } else {
+            mTrimStage = STAGE_NORMAL;
+        }
+
+        if (stage != mStage) {
+            mStage = stage;
+            mStageChangeCount++;
+            for (int i = mListeners.size() - 1; i >= 0; i--) {
+                mListeners.get(i).onMemoryStageChanged(stage);
+            }
+        }
+        return mStage;
+    }
+
+    /**
+     * Raises the stage for a {@link ComponentCallbacks2} trim level. Levels sent while the
+     * app is in the background are left to the caches, nothing on screen needs to change.
+     */
+    public int onTrimMemory(final int level, final long nowMillis) {
+        final int stage;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return update(nowMillis);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            stage = STAGE_PAUSE_IMPORTS;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            stage = STAGE_THUMBNAILS;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            stage = STAGE_NO_PREFETCH;
+        } else {
+            return update(nowMillis);
+        }
+        return hold(stage, nowMillis);
+    }
+
+    /**
+     * The system is about to kill background processes, go straight to the last stage.
+     */
+    public int onLowMemory(final long nowMillis) {
+        return hold(STAGE_PAUSE_IMPORTS, nowMillis);
+    }
+
+    private int hold(final int stage, final long nowMillis) {
+        mTrimCount++;
+        mTrimStage = Math.max(nowMillis < mTrimUntilMillis ? mTrimStage : STAGE_NORMAL, stage);
+        mTrimUntilMillis = nowMillis + TRIM_HOLD_MILLIS;
+        return update(nowMillis);
+    }
+
+    public int getStage() {
+        return mStage;
+    }
+
+    public long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    /**
+     * Bytes in use at the last {@link #update(long)}.
+     */
+    public long getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    public long getPeakBytes() {
+        return mPeakBytes;
+    }
+
+    public long getInFlightBytes() {
+        return mInFlightBytes.get();
+    }
+
+    public int getStageChangeCount() {
+        return mStageChangeCount;
+    }
+
+    public int getTrimCount() {
+        return mTrimCount;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryGovernor[stage=" + mStage + ",used=" + mUsedBytes + ",budget=" + mBudgetBytes
+                + ",peak=" + mPeakBytes + ",inFlight=" + mInFlightBytes.get()
+                + ",stageChanges=" + mStageChangeCount + ",trims=" + mTrimCount + "]";
+    }
+
+    /**
+     * Something that holds picture memory the governor should count.
+     */
+    public interface IByteSource {
+        long getByteCount();
+    }
+
+    public interface IOnStageChangedListener {
+        /**
+         * Called on the main thread from {@link #update(long)}.
+         */
+        void onMemoryStageChanged(int stage);
+    }
+}
@@ -0,0 +1,69 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+
+/**
+ * What one row of a {@link DraggableImageLayout} shows: the picture at the size of the row
+ * and its thumbnail at {@link DraggableImageLayout#THUMBNAIL_SCALE}. Both are drawn where
+ * the picture was loaded, off the main thread, so binding a row only hands them to its view.
+ */
+public class RowBitmaps {
+
+    private final Bitmap mBitmap;
+
+    private final boolean mOwnsBitmap;
+
+    private final Bitmap mThumbnail;
+
+
+    private RowBitmaps(Bitmap pBitmap, boolean pOwnsBitmap, Bitmap pThumbnail) {
+        this.mBitmap = pBitmap;
+        this.mOwnsBitmap = pOwnsBitmap;
+        this.mThumbnail = pThumbnail;
+    }
+
+    /**
+     * Resizes pBitmap to pWidth x pHeight, unless it already is that size, and draws its
+     * thumbnail. Does both draws on the calling thread.
+     *
+     * @param pPool where to take the pixel memory from, or null
+     */
+    public static RowBitmaps create(Bitmap pBitmap, int pWidth, int pHeight, BitmapPool pPool) {
+        final Bitmap display = pPool != null
+                ? BitmapUtils.resizeBitmapFromPool(pBitmap, pWidth, pHeight, pPool)
+                : BitmapUtils.resizeBitmap(pBitmap, pWidth, pHeight);
+        final Bitmap thumbnail = BitmapUtils.createThumbnail(display, DraggableImageLayout.THUMBNAIL_SCALE, pPool);
+        return new RowBitmaps(display, display != pBitmap, thumbnail);
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * True when {@link #getBitmap()} is a private copy rather than the loaded bitmap, which
+     * the memory cache may still hand out.
+     */
+    public boolean ownsBitmap() {
+        return mOwnsBitmap;
+    }
+
+    public Bitmap getThumbnail() {
+        return mThumbnail;
+    }
+
+    /**
+     * Gives the private copies to pPool, for results that no row took.
+     */
+    void release(BitmapPool pPool) {
+        if (pPool == null) {
+            return;
+        }
+        if (mThumbnail != mBitmap) {
+            pPool.put(mThumbnail);
+        }
+        if (mOwnsBitmap) {
+            pPool.put(mBitmap);
+        }
+    }
+}
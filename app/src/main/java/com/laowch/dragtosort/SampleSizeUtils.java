@@ -0,0 +1,58 @@
+package com.laowch.dragtosort;
+
+/**
+ * Dimension-only arithmetic behind the bounds-first decode in {@link BitmapUtils}.
+ * Nothing here touches pixel data, so it can be checked without a device.
+ */
+public class SampleSizeUtils {
+
+    public static final int BYTES_PER_PIXEL_ARGB_8888 = 4;
+
+    /**
+     * Returns the largest power of two that still keeps the decoded image at least
+     * requestedWidth wide (and requestedHeight tall when it is greater than zero).
+     */
+    public static int calculateInSampleSize(final int srcWidth, final int srcHeight, final int requestedWidth, final int requestedHeight) {
+        if (srcWidth <= 0 || srcHeight <= 0 || requestedWidth <= 0) {
+            return 1;
+        }
+
+        int inSampleSize = 1;
+        while (srcWidth / (inSampleSize * 2) >= requestedWidth
+                && (requestedHeight <= 0 || srcHeight / (inSampleSize * 2) >= requestedHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Size of one side after subsampling. The decoders round up, so this does too.
+     */
+    public static int sampledSize(final int srcSize, final int inSampleSize) {
+        return (srcSize + inSampleSize - 1) / inSampleSize;
+    }
+
+    /**
+     * Height that keeps the source aspect ratio at the given width.
+     */
+    public static int scaledHeight(final int srcWidth, final int srcHeight, final int width) {
+        return Math.max(1, Math.round((float) srcHeight * width / srcWidth));
+    }
+
+    /**
+     * Worst-case bytes alive at once while decoding a srcWidth x srcHeight image for
+     * requestedWidth: the subsampled bitmap plus, when it is still wider than requested,
+     * the final scaled copy.
+     */
+    public static long estimatePeakBytes(final int srcWidth, final int srcHeight, final int requestedWidth, final int bytesPerPixel) {
+        final int inSampleSize = calculateInSampleSize(srcWidth, srcHeight, requestedWidth, 0);
+        final int decodedWidth = sampledSize(srcWidth, inSampleSize);
+        final int decodedHeight = sampledSize(srcHeight, inSampleSize);
+
+        long peak = (long) decodedWidth * decodedHeight * bytesPerPixel;
+        if (decodedWidth > requestedWidth) {
+            peak += (long) requestedWidth * scaledHeight(decodedWidth, decodedHeight, requestedWidth) * bytesPerPixel;
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,221 @@
+package com.laowch.dragtosort;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Drives the collapse and expand transitions of a {@link DraggableImageLayout} from one
+ * {@link ValueAnimator}. Every child scales from a start scale back to 1 and slides from a
+ * start offset back to 0, sideways as well when it changes column in a grid; all of them
+ * are computed from the same interpolated progress on each frame.
+ * <p/>
+ * Children that stay outside the viewport for the whole transition are put at their final
+ * transform in {@link #start(long, int, int)} and not touched again, so the per-frame cost
+ * follows the number of visible children. The animated children are drawn from hardware
+ * layers until the transition ends.
+ */
+class ScaleTransition extends AnimatorListenerAdapter implements ValueAnimator.AnimatorUpdateListener {
+
+    private final ViewGroup mParent;
+
+    private final ValueAnimator mAnimator = ValueAnimator.ofFloat(0f, 1f);
+
+    private float[] mFromTranslationX = new float[0];
+
+    private float[] mFromTranslationY = new float[0];
+
+    private float[] mFromScale = new float[0];
+
+    private View[] mActiveViews = new View[0];
+
+    private float[] mActiveTranslationX = new float[0];
+
+    private float[] mActiveTranslationY = new float[0];
+
+    private float[] mActiveScale = new float[0];
+
+    private int mCount = 0;
+
+    private int mActiveCount = 0;
+
+    private View mHoverView;
+    private float mHoverFromX;
+    private float mHoverToX;
+    private float mHoverFromY;
+    private float mHoverToY;
+    private float mHoverFromScale;
+
+    private Runnable mEndAction;
+
+    // the animator still reports itself running while its end listeners are called
+    private boolean mRunning = false;
+
+
+    ScaleTransition(ViewGroup pParent) {
+        this.mParent = pParent;
+        this.mAnimator.addUpdateListener(this);
+        this.mAnimator.addListener(this);
+    }
+
+    /**
+     * Ends the running transition, if any, and clears all targets. Allocates only when
+     * there are more children than in any transition before.
+     */
+    void reset() {
+        mAnimator.end();
+        mCount = mParent.getChildCount();
+        if (mFromScale.length < mCount) {
+            mFromTranslationX = new float[mCount];
+            mFromTranslationY = new float[mCount];
+            mFromScale = new float[mCount];
+            mActiveViews = new View[mCount];
+            mActiveTranslationX = new float[mCount];
+            mActiveTranslationY = new float[mCount];
+            mActiveScale = new float[mCount];
+        }
+        for (int i = 0; i < mCount; i++) {
+            mFromTranslationX[i] = 0;
+            mFromTranslationY[i] = 0;
+            mFromScale[i] = 1;
+        }
+        mHoverView = null;
+    }
+
+    void setChildStart(int pChildIndex, float pTranslationY, float pScale) {
+        setChildStart(pChildIndex, 0, pTranslationY, pScale);
+    }
+
+    void setChildStart(int pChildIndex, float pTranslationX, float pTranslationY, float pScale) {
+        mFromTranslationX[pChildIndex] = pTranslationX;
+        mFromTranslationY[pChildIndex] = pTranslationY;
+        mFromScale[pChildIndex] = pScale;
+    }
+
+    /**
+     * Also moves view, which lives outside the parent, from one position and scale to
+     * another position at scale 1.
+     */
+    void setHoverView(View view, float fromX, float toX, float fromY, float toY, float fromScale) {
+        mHoverView = view;
+        mHoverFromX = fromX;
+        mHoverToX = toX;
+        mHoverFromY = fromY;
+        mHoverToY = toY;
+        mHoverFromScale = fromScale;
+    }
+
+    /**
+     * Starts the transition for the children that can be seen between viewportTop and
+     * viewportBottom, in the parent's coordinates, at its start or its end or anywhere in
+     * between. The children are tracked by reference from here on, so reordering them
+     * while the transition runs is fine.
+     */
+    void start(long pDuration, int viewportTop, int viewportBottom) {
+        mActiveCount = 0;
+        for (int i = 0; i < mCount; i++) {
+            final View child = mParent.getChildAt(i);
+            final float scale = mFromScale[i];
+            final float translationX = mFromTranslationX[i];
+            final float translationY = mFromTranslationY[i];
+            if (translationX == 0 && translationY == 0 && scale == 1) {
+                continue;
+            }
+
+            final int top = child.getTop();
+            final int height = child.getHeight();
+            final float startCenter = top + translationY + height / 2f;
+            final float startTop = startCenter - height * scale / 2f;
+            final float startBottom = startCenter + height * scale / 2f;
+
+            final float extentTop = Math.min(startTop, top);
+            final float extentBottom = Math.max(startBottom, top + height);
+            if (extentBottom < viewportTop || extentTop > viewportBottom) {
+                child.setTranslationX(0);
+                child.setTranslationY(0);
+                child.setScaleX(1);
+                child.setScaleY(1);
+                continue;
+            }
+
+            mActiveViews[mActiveCount] = child;
+            mActiveTranslationX[mActiveCount] = translationX;
+            mActiveTranslationY[mActiveCount] = translationY;
+            mActiveScale[mActiveCount] = scale;
+            mActiveCount++;
+            // a layer taller than the maximum texture size cannot be created
+            if (height <= ImagePipeline.TALL_IMAGE_MAX_HEIGHT) {
+                child.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            }
+        }
+        if (mHoverView != null) {
+            mHoverView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
+
+        mAnimator.setDuration(pDuration);
+        mRunning = true;
+        mAnimator.start();
+        // put everything at progress 0 before the first frame is drawn
+        apply(0);
+    }
+
+    /**
+     * Runs action on the main thread whenever a transition ends, after the children are at
+     * their final transform.
+     */
+    void setEndAction(Runnable action) {
+        mEndAction = action;
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    int getActiveCount() {
+        return mActiveCount;
+    }
+
+    @Override
+    public void onAnimationUpdate(ValueAnimator animation) {
+        apply(animation.getAnimatedFraction());
+    }
+
+    private void apply(float progress) {
+        final float remaining = 1 - progress;
+        for (int i = 0; i < mActiveCount; i++) {
+            final View child = mActiveViews[i];
+            final float scale = 1 + (mActiveScale[i] - 1) * remaining;
+            child.setTranslationX(mActiveTranslationX[i] * remaining);
+            child.setTranslationY(mActiveTranslationY[i] * remaining);
+            child.setScaleX(scale);
+            child.setScaleY(scale);
+        }
+
+        if (mHoverView != null) {
+            final float scale = 1 + (mHoverFromScale - 1) * remaining;
+            mHoverView.setTranslationX(mHoverFromX + (mHoverToX - mHoverFromX) * progress);
+            mHoverView.setTranslationY(mHoverFromY + (mHoverToY - mHoverFromY) * progress);
+            mHoverView.setScaleX(scale);
+            mHoverView.setScaleY(scale);
+        }
+    }
+
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        mRunning = false;
+        apply(1);
+        for (int i = 0; i < mActiveCount; i++) {
+            mActiveViews[i].setLayerType(View.LAYER_TYPE_NONE, null);
+            mActiveViews[i] = null;
+        }
+        if (mHoverView != null) {
+            mHoverView.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+        mActiveCount = 0;
+        if (mEndAction != null) {
+            mEndAction.run();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.laowch.dragtosort;
+
+/**
+ * Follows the scroll position of a list to tell how far ahead of the viewport rows should
+ * be decoded, and on which side. The distance grows with the scroll velocity, so a fling
+ * or a fast auto-scroll looks further ahead than a slow drag. Works on plain numbers so
+ * it can be driven without a view.
+ */
+public class ScrollPrefetchPolicy {
+
+    /**
+     * Time ahead, at the current velocity, that the prefetched rows should cover.
+     */
+    static final int LOOKAHEAD_MILLIS = 400;
+
+    /**
+     * Scroll events further apart than this start a new gesture, the velocity before it no
+     * longer counts.
+     */
+    static final int IDLE_MILLIS = 100;
+
+    /**
+     * Weight of the newest sample in the smoothed velocity.
+     */
+    private static final float SMOOTHING = 0.5f;
+
+    private int mLastScrollY;
+
+    private long mLastTimeMillis = -1;
+
+    private float mVelocity = 0;
+
+    private int mDirection = 1;
+
+
+    /**
+     * @param scrollY    new scroll position
+     * @param timeMillis monotonic time of the change, e.g. SystemClock.uptimeMillis()
+     */
+    public void onScroll(final int scrollY, final long timeMillis) {
+        final int delta = scrollY - mLastScrollY;
+        final long elapsed = timeMillis - mLastTimeMillis;
+
+        if (mLastTimeMillis < 0 || elapsed > IDLE_MILLIS) {
+            mVelocity = 0;
+        } else if (elapsed > 0) {
+            mVelocity = mVelocity * (1 - SMOOTHING) + (float) delta / elapsed * SMOOTHING;
+        }
+        if (delta != 0) {
+            mDirection = delta > 0 ? 1 : -1;
+        }
+
+        mLastScrollY = scrollY;
+        mLastTimeMillis = timeMillis;
+    }
+
+    /**
+     * Smoothed velocity in pixels per millisecond, positive towards the end of the list,
+     * or 0 once scrolling has stopped.
+     */
+    public float getVelocity(final long timeMillis) {
+        return mLastTimeMillis < 0 || timeMillis - mLastTimeMillis > IDLE_MILLIS ? 0 : mVelocity;
+    }
+
+    /**
+     * 1 when the last scroll went towards the end of the list, -1 when it went towards the
+     * start. Stays put while idle, so prefetching keeps going the same way.
+     */
+    public int getDirection() {
+        return mDirection;
+    }
+
+    /**
+     * Distance beyond the leading edge of the viewport to prefetch: half a viewport when
+     * idle, more when scrolling fast, at most three viewports.
+     */
+    public int getPrefetchDistance(final int viewportHeight, final long timeMillis) {
+        final float ahead = Math.abs(getVelocity(timeMillis)) * LOOKAHEAD_MILLIS;
+        return (int) Math.min(viewportHeight * 3f, Math.max(viewportHeight / 2f, ahead));
+    }
+}
@@ -0,0 +1,56 @@
+package com.laowch.dragtosort;
+
+/**
+ * Finds where a dragged row belongs from the cumulative tops of the rows, by binary search
+ * rather than by looking at the direct neighbours only, so a finger that skips several
+ * rows in one move event lands on the right slot at once. Rows may have any height.
+ * <p/>
+ * In a grid of equal cells the slot is computed directly from the position instead, see
+ * {@link #findGridSlot(int, int, int, int, int, int, int, int)}.
+ */
+public class SlotSearch {
+
+    /**
+     * @param slotTops   slotTops[i] is the top of slot i and slotTops[i + 1] its bottom,
+     *                   so it holds count + 1 ascending values
+     * @param count      number of slots
+     * @param mobileSlot slot the dragged row is in now
+     * @param y          position of the finger, in the same coordinates as slotTops
+     * @return the slot the dragged row should move to. It passes a row once the finger is
+     * beyond that row's middle, the same rule as a single neighbour swap.
+     */
+    public static int findTargetSlot(final int[] slotTops, final int count, final int mobileSlot, final int y) {
+        // the middles of the slots ascend, count how many lie above y
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (slotTops[mid] + (slotTops[mid + 1] - slotTops[mid]) / 2 < y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // the dragged row itself does not count
+        final int target = mobileSlot < low ? low - 1 : low;
+        return Math.max(0, Math.min(count - 1, target));
+    }
+
+    /**
+     * @param x           position of the finger, in the same coordinates as left
+     * @param y           position of the finger, in the same coordinates as top
+     * @param left        left of the first column
+     * @param top         top of the first row
+     * @param columnCount cells per row, filled left to right and then top to bottom
+     * @param count       number of slots, at least 1
+     * @return the slot of the cell under x, y. Positions beside or above the grid take the
+     * nearest cell, positions beyond the last slot take the last slot.
+     */
+    public static int findGridSlot(final int x, final int y, final int left, final int top,
+                                   final int cellWidth, final int cellHeight, final int columnCount, final int count) {
+        final int column = Math.max(0, Math.min(columnCount - 1, (x - left) / cellWidth));
+        final int row = Math.max(0, (y - top) / cellHeight);
+        return (int) Math.min(count - 1, (long) row * columnCount + column);
+    }
+}
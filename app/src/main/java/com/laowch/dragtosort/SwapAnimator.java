@@ -0,0 +1,100 @@
+package com.laowch.dragtosort;
+
+import android.animation.ValueAnimator;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Animates the translation of the children of a {@link ViewGroup} towards per-child
+ * targets with one reusable {@link ValueAnimator}. Retargeting restarts it from wherever
+ * each child is drawn now, so a drag can retarget on every move event without creating
+ * animators, listeners or holders.
+ */
+class SwapAnimator implements ValueAnimator.AnimatorUpdateListener {
+
+    private final ViewGroup mParent;
+
+    private final ValueAnimator mAnimator = ValueAnimator.ofFloat(0f, 1f);
+
+    private float[] mFrom = new float[0];
+
+    private float[] mTo = new float[0];
+
+    private float[] mFromX = new float[0];
+
+    private float[] mToX = new float[0];
+
+    private int mCount = 0;
+
+
+    SwapAnimator(ViewGroup pParent, long pDuration) {
+        this.mParent = pParent;
+        this.mAnimator.setDuration(pDuration);
+        this.mAnimator.addUpdateListener(this);
+    }
+
+    /**
+     * Takes the current translation of every child as its target. Allocates only when
+     * there are more children than in any session before.
+     */
+    void begin() {
+        mCount = mParent.getChildCount();
+        if (mFrom.length < mCount) {
+            mFrom = new float[mCount];
+            mTo = new float[mCount];
+            mFromX = new float[mCount];
+            mToX = new float[mCount];
+        }
+        for (int i = 0; i < mCount; i++) {
+            mFrom[i] = mTo[i] = mParent.getChildAt(i).getTranslationY();
+            mFromX[i] = mToX[i] = mParent.getChildAt(i).getTranslationX();
+        }
+    }
+
+    void setTarget(int pChildIndex, float pTranslationY) {
+        mTo[pChildIndex] = pTranslationY;
+    }
+
+    /**
+     * For children that move sideways too, as in a grid.
+     */
+    void setTarget(int pChildIndex, float pTranslationX, float pTranslationY) {
+        mToX[pChildIndex] = pTranslationX;
+        mTo[pChildIndex] = pTranslationY;
+    }
+
+    /**
+     * Starts moving every child from where it is now towards its target.
+     */
+    void start() {
+        mAnimator.cancel();
+        for (int i = 0; i < mCount; i++) {
+            mFrom[i] = mParent.getChildAt(i).getTranslationY();
+            mFromX[i] = mParent.getChildAt(i).getTranslationX();
+        }
+        mAnimator.start();
+    }
+
+    /**
+     * Stops animating and leaves the children where they are.
+     */
+    void end() {
+        mAnimator.cancel();
+        mCount = 0;
+    }
+
+    @Override
+    public void onAnimationUpdate(ValueAnimator animation) {
+        final float fraction = animation.getAnimatedFraction();
+        for (int i = 0; i < mCount; i++) {
+            if (mFrom[i] != mTo[i]) {
+                final View child = mParent.getChildAt(i);
+                child.setTranslationY(mFrom[i] + (mTo[i] - mFrom[i]) * fraction);
+            }
+            if (mFromX[i] != mToX[i]) {
+                final View child = mParent.getChildAt(i);
+                child.setTranslationX(mFromX[i] + (mToX[i] - mFromX[i]) * fraction);
+            }
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.laowch.dragtosort;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row for a picture too tall to hold as one bitmap at full width, see
+ * {@link ImagePipeline#isTall(int, int)}. Only the horizontal strips that are on screen,
+ * plus one on either side, are decoded at full width with a {@link BitmapRegionDecoder};
+ * strips that scroll further away are dropped. Below them a small preview of the whole
+ * picture fills in until a strip arrives, and serves as the drawable of the view, so the
+ * hover cell and drag-to-sort treat the row like any other.
+ * <p/>
+ * The row is sized for the picture as shown, after its EXIF orientation. Strips are cut
+ * from the upright picture, decoded from the matching part of the stored one and rotated as
+ * they are drawn; the preview is rotated once when it is decoded.
+ * <p/>
+ * Strips and the preview decode into bitmaps from the {@link BitmapPool} and go back to it
+ * when dropped. The region decoder is closed whenever the row leaves the window and opened
+ * again by the first strip it needs after that.
+ */
+public class TiledImageView extends ImageView implements ViewTreeObserver.OnScrollChangedListener {
+
+    /**
+     * Height of a strip in view pixels.
+     */
+    static final int TILE_HEIGHT = 512;
+
+    /**
+     * Tallest the whole-picture preview may be decoded.
+     */
+    private static final int PREVIEW_MAX_HEIGHT = 1024;
+
+    // one thread for every tiled row, region decoders are not meant for concurrent use
+    private static final ThreadPoolExecutor sDecodeExecutor;
+
+    static {
+        sDecodeExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory("TiledImageView"));
+        sDecodeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final SparseArray<Tile> mTiles = new SparseArray<Tile>();
+
+    private final SparseArray<Future<?>> mPendingTiles = new SparseArray<Future<?>>();
+
+    private final Rect mVisibleRect = new Rect();
+
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private Uri mUri;
+
+    private Bitmap mPreview;
+
+    // only touched on the decode thread
+    private BitmapRegionDecoder mDecoder;
+
+    // EXIF orientation of the picture mDecoder reads, only touched on the decode thread
+    private int mOrientation;
+
+    /**
+     * Bumped whenever the tiles in flight stop being wanted, so their results are dropped.
+     */
+    private int mGeneration = 0;
+
+
+    public TiledImageView(Context context) {
+        super(context);
+        setScaleType(ScaleType.FIT_XY);
+    }
+
+    public void setSource(final Uri pUri) {
+        release();
+        mUri = pUri;
+        if (pUri == null) {
+            return;
+        }
+
+        sDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap preview = decodePreview(pUri);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (preview == null) {
+                            return;
+                        }
+                        if (pUri != mUri || mPreview != null) {
+                            BitmapPool.getInstance().put(preview);
+                            return;
+                        }
+                        mPreview = preview;
+                        setImageBitmap(preview);
+                    }
+                });
+            }
+        });
+        updateTiles();
+    }
+
+    /**
+     * Drops the preview, every strip and the decoder. The view shows nothing until the next
+     * {@link #setSource(Uri)}.
+     */
+    public void release() {
+        dropTiles();
+        setImageDrawable(null);
+        if (mPreview != null) {
+            BitmapPool.getInstance().put(mPreview);
+            mPreview = null;
+        }
+        if (mUri != null) {
+            mUri = null;
+            recycleDecoder();
+        }
+    }
+
+    private void recycleDecoder() {
+        // queued behind any decode still running for this view
+        sDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDecoder != null) {
+                    mDecoder.recycle();
+                    mDecoder = null;
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(this);
+        updateTiles();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(this);
+        dropTiles();
+        if (mUri != null) {
+            recycleDecoder();
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        // strips are cut for one size, collapsing or expanding the layout needs new ones
+        dropTiles();
+        updateTiles();
+    }
+
+    @Override
+    public void onScrollChanged() {
+        updateTiles();
+    }
+
+    /**
+     * Requests the strips that are visible or next to the visible part and drops the rest.
+     */
+    private void updateTiles() {
+        if (mUri == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        if (!getLocalVisibleRect(mVisibleRect)) {
+            dropTiles();
+            return;
+        }
+
+        final int lastTile = (getHeight() - 1) / TILE_HEIGHT;
+        final int first = Math.max(0, mVisibleRect.top / TILE_HEIGHT - 1);
+        final int last = Math.min(lastTile, (mVisibleRect.bottom - 1) / TILE_HEIGHT + 1);
+
+        boolean dropped = false;
+        for (int i = mTiles.size() - 1; i >= 0; i--) {
+            final int index = mTiles.keyAt(i);
+            if (index < first || index > last) {
+                BitmapPool.getInstance().put(mTiles.valueAt(i).mBitmap);
+                mTiles.removeAt(i);
+                dropped = true;
+            }
+        }
+        for (int i = mPendingTiles.size() - 1; i >= 0; i--) {
+            final int index = mPendingTiles.keyAt(i);
+            if (index < first || index > last) {
+                mPendingTiles.valueAt(i).cancel(false);
+                mPendingTiles.removeAt(i);
+            }
+        }
+
+        for (int index = first; index <= last; index++) {
+            if (mTiles.get(index) == null && mPendingTiles.get(index) == null) {
+                requestTile(index);
+            }
+        }
+        if (dropped) {
+            invalidate();
+        }
+    }
+
+    private void requestTile(final int pIndex) {
+        final Uri uri = mUri;
+        final int width = getWidth();
+        final int height = getHeight();
+        final int generation = mGeneration;
+
+        mPendingTiles.put(pIndex, sDecodeExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Tile tile = decodeTile(uri, pIndex, width, height);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration || mPendingTiles.get(pIndex) == null) {
+                            if (tile != null) {
+                                BitmapPool.getInstance().put(tile.mBitmap);
+                            }
+                            return;
+                        }
+                        mPendingTiles.remove(pIndex);
+                        if (tile != null) {
+                            mTiles.put(pIndex, tile);
+                            invalidate();
+                        }
+                    }
+                });
+            }
+        }));
+    }
+
+    private void dropTiles() {
+        mGeneration++;
+        for (int i = 0; i < mPendingTiles.size(); i++) {
+            mPendingTiles.valueAt(i).cancel(false);
+        }
+        mPendingTiles.clear();
+        for (int i = 0; i < mTiles.size(); i++) {
+            BitmapPool.getInstance().put(mTiles.valueAt(i).mBitmap);
+        }
+        if (mTiles.size() > 0) {
+            mTiles.clear();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // the preview, stretched over the whole row
+        super.onDraw(canvas);
+
+        for (int i = 0; i < mTiles.size(); i++) {
+            final Tile tile = mTiles.valueAt(i);
+            canvas.drawBitmap(tile.mBitmap, tile.mMatrix, mTilePaint);
+        }
+    }
+
+    /**
+     * Decodes strip pIndex of a pWidth x pHeight row. Runs on the decode thread.
+     */
+    private Tile decodeTile(final Uri pUri, final int pIndex, final int pWidth, final int pHeight) {
+        try {
+            if (mDecoder == null) {
+                final InputStream stream = getContext().getContentResolver().openInputStream(pUri);
+                try {
+                    mDecoder = BitmapRegionDecoder.newInstance(stream, false);
+                } finally {
+                    stream.close();
+                }
+                mOrientation = readOrientation(pUri);
+            }
+            final int srcWidth = mDecoder.getWidth();
+            final int srcHeight = mDecoder.getHeight();
+            final boolean swap = ExifOrientation.swapsDimensions(mOrientation);
+            final int uprightWidth = swap ? srcHeight : srcWidth;
+            final int uprightHeight = swap ? srcWidth : srcHeight;
+
+            final int top = (int) ((long) pIndex * TILE_HEIGHT * uprightHeight / pHeight);
+            final int bottom = (int) Math.min(uprightHeight, (long) (pIndex + 1) * TILE_HEIGHT * uprightHeight / pHeight);
+            if (bottom <= top) {
+                return null;
+            }
+
+            final float[] affine = new float[6];
+            ExifOrientation.getTransform(mOrientation, srcWidth, srcHeight, affine);
+            final Matrix toUpright = new Matrix();
+            toUpright.setValues(new float[]{affine[0], affine[1], affine[2], affine[3], affine[4], affine[5], 0f, 0f, 1f});
+            final Matrix toStored = new Matrix();
+            toUpright.invert(toStored);
+
+            // the strip of the upright picture, as a rect of the stored one
+            final RectF strip = new RectF(0, top, uprightWidth, bottom);
+            toStored.mapRect(strip);
+            final Rect region = new Rect();
+            strip.round(region);
+            if (!region.intersect(0, 0, srcWidth, srcHeight)) {
+                return null;
+            }
+
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = SampleSizeUtils.calculateInSampleSize(uprightWidth, uprightHeight, pWidth, 0);
+            final Bitmap bitmap = decodeReusing(region, options);
+            if (bitmap == null) {
+                return null;
+            }
+
+            // bitmap pixels to the region, to the upright picture, to the row
+            final Matrix matrix = new Matrix();
+            matrix.setScale((float) region.width() / bitmap.getWidth(), (float) region.height() / bitmap.getHeight());
+            matrix.postTranslate(region.left, region.top);
+            matrix.postConcat(toUpright);
+            matrix.postScale((float) pWidth / uprightWidth, (float) pHeight / uprightHeight);
+            return new Tile(bitmap, matrix);
+        } catch (IOException ex) {
+            return null;
+        } catch (OutOfMemoryError error) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes pRegion into a mutable bitmap, taking its pixel memory from the pool when one
+     * fits. Runs on the decode thread.
+     */
+    private Bitmap decodeReusing(final Rect pRegion, final BitmapFactory.Options pOptions) {
+        pOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        pOptions.inMutable = true;
+        pOptions.inBitmap = BitmapPool.getInstance().getForDecode(
+                SampleSizeUtils.sampledSize(pRegion.width(), pOptions.inSampleSize),
+                SampleSizeUtils.sampledSize(pRegion.height(), pOptions.inSampleSize),
+                pOptions.inSampleSize, pOptions.inPreferredConfig);
+        Bitmap bitmap;
+        try {
+            bitmap = mDecoder.decodeRegion(pRegion, pOptions);
+        } catch (IllegalArgumentException ex) {
+            // the pooled bitmap was not acceptable to this decoder
+            bitmap = null;
+        }
+        if (bitmap == null && pOptions.inBitmap != null) {
+            BitmapPool.getInstance().put(pOptions.inBitmap);
+            pOptions.inBitmap = null;
+            bitmap = mDecoder.decodeRegion(pRegion, pOptions);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes the whole picture small enough to stay under {@link #PREVIEW_MAX_HEIGHT} and
+     * turns it upright. Runs on the decode thread.
+     */
+    private Bitmap decodePreview(final Uri pUri) {
+        InputStream stream = null;
+        try {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            stream = getContext().getContentResolver().openInputStream(pUri);
+            BitmapFactory.decodeStream(stream, null, options);
+            stream.close();
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            final int orientation = readOrientation(pUri);
+            final boolean swap = ExifOrientation.swapsDimensions(orientation);
+
+            int sampleSize = 1;
+            while ((swap ? options.outWidth : options.outHeight) / sampleSize > PREVIEW_MAX_HEIGHT) {
+                sampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inMutable = true;
+            options.inBitmap = BitmapPool.getInstance().getForDecode(SampleSizeUtils.sampledSize(options.outWidth, sampleSize),
+                    SampleSizeUtils.sampledSize(options.outHeight, sampleSize), sampleSize, options.inPreferredConfig);
+            stream = getContext().getContentResolver().openInputStream(pUri);
+            Bitmap preview;
+            try {
+                preview = BitmapFactory.decodeStream(stream, null, options);
+            } catch (IllegalArgumentException ex) {
+                // the pooled bitmap was not acceptable to this decoder
+                preview = null;
+            }
+            if (preview == null && options.inBitmap != null) {
+                BitmapPool.getInstance().put(options.inBitmap);
+                options.inBitmap = null;
+                stream.close();
+                stream = getContext().getContentResolver().openInputStream(pUri);
+                preview = BitmapFactory.decodeStream(stream, null, options);
+            }
+            if (preview == null || orientation == ExifOrientation.NORMAL) {
+                return preview;
+            }
+
+            final int width = swap ? preview.getHeight() : preview.getWidth();
+            final int height = swap ? preview.getWidth() : preview.getHeight();
+            final Bitmap upright = BitmapUtils.resizeBitmap(preview, width, height, options.inPreferredConfig,
+                    BitmapPool.getInstance().get(width, height, options.inPreferredConfig), orientation);
+            BitmapPool.getInstance().put(preview);
+            return upright;
+        } catch (IOException ex) {
+            return null;
+        } catch (OutOfMemoryError error) {
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the EXIF orientation of pUri, {@link ExifOrientation#NORMAL} if it has none or
+     * cannot be read. Runs on the decode thread.
+     */
+    private int readOrientation(final Uri pUri) {
+        InputStream stream = null;
+        try {
+            stream = getContext().getContentResolver().openInputStream(pUri);
+            return ExifOrientation.readOrientation(new BufferedInputStream(stream));
+        } catch (IOException ex) {
+            return ExifOrientation.NORMAL;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * A decoded strip and where it goes: from its pixels in stored orientation to the row.
+     */
+    private static class Tile {
+        final Bitmap mBitmap;
+        final Matrix mMatrix;
+
+        Tile(Bitmap pBitmap, Matrix pMatrix) {
+            this.mBitmap = pBitmap;
+            this.mMatrix = pMatrix;
+        }
+    }
+}
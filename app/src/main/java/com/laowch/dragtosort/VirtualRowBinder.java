@@ -0,0 +1,475 @@
+package com.laowch.dragtosort;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+import android.widget.ScrollView;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps bitmaps bound only to the rows of a {@link DraggableImageLayout} that are on screen
+ * or within a prefetch margin of it. Every row stays in the layout with its full size, so
+ * scrolling and drag-to-sort see the same geometry whether a row is bound or not, but the
+ * pixels held stay proportional to the viewport rather than to the number of pictures.
+ * <p/>
+ * Rows are loaded through the {@link ImagePipeline} on loader threads, answered from the
+ * memory cache when possible, and the row-sized bitmap and its thumbnail are drawn there
+ * too, so binding a row on the main thread only sets them. Visible rows are always loaded
+ * first; behind them a few rows ahead in the direction of travel are prefetched at low
+ * priority, more of them the faster the list scrolls, see {@link ScrollPrefetchPolicy}. That
+ * includes the auto-scroll while dragging, which moves the scroll view like any other
+ * scroll. Pending loads for rows that are neither visible nor ahead are cancelled.
+ * <p/>
+ * Unbinding never recycles a bitmap the cache may still hand out; only private resized
+ * copies go back to the {@link BitmapPool}.
+ * <p/>
+ * When the pipeline has a {@link MemoryGovernor}, its stage is followed on every pass: from
+ * {@link MemoryGovernor#STAGE_NO_PREFETCH} nothing is prefetched, and from
+ * {@link MemoryGovernor#STAGE_THUMBNAILS} rows bound off screen drop their full size bitmap
+ * and show their thumbnail until they are visible again.
+ * <p/>
+ * What stays constant as the list grows is the bitmap memory and the work per pass: the
+ * first visible row is found by a binary search over the row bottoms, or directly from the
+ * grid row, and only rows that hold a bitmap, a thumbnail or a pending load are visited to
+ * let them go. Views are not recycled, every row keeps its own placeholder view, because
+ * drag-to-sort, its slots and the scale transitions all work on the layout's children; the
+ * view count and the cost of a full layout pass still follow the number of pictures.
+ */
+class VirtualRowBinder implements ViewTreeObserver.OnScrollChangedListener, ViewTreeObserver.OnGlobalLayoutListener,
+        MemoryGovernor.IOnStageChangedListener {
+
+    private static final int LOADER_THREADS = 2;
+
+    private static final int PRIORITY_VISIBLE = 0;
+    private static final int PRIORITY_PREFETCH = 1;
+
+    /**
+     * Rows prefetched ahead of the viewport however short the prefetch distance.
+     */
+    private static final int MIN_PREFETCH_ROWS = 2;
+
+    /**
+     * Rows prefetched ahead of the viewport however long the prefetch distance.
+     */
+    private static final int MAX_PREFETCH_ROWS = 8;
+
+    private final DraggableImageLayout mLayout;
+
+    private final ScrollView mScrollView;
+
+    private final ImagePipeline mImagePipeline;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final ScrollPrefetchPolicy mPrefetchPolicy = new ScrollPrefetchPolicy();
+
+    private long mTaskSequence = 0;
+
+    private int mPrefetchMargin = -1;
+
+    private boolean mAttached = false;
+
+    /**
+     * Rows holding a bitmap, a thumbnail or a pending load, the only ones that ever need to
+     * be let go.
+     */
+    private final LinkedHashSet<ImageView> mTrackedRows = new LinkedHashSet<ImageView>();
+
+    private int mPass = 0;
+
+
+    VirtualRowBinder(DraggableImageLayout pLayout, ScrollView pScrollView, ImagePipeline pImagePipeline) {
+        this.mLayout = pLayout;
+        this.mScrollView = pScrollView;
+        this.mImagePipeline = pImagePipeline;
+        this.mExecutor = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 1, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new BackgroundThreadFactory("VirtualRowBinder"));
+        this.mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    void attach() {
+        if (mAttached) {
+            return;
+        }
+        mAttached = true;
+        mScrollView.getViewTreeObserver().addOnScrollChangedListener(this);
+        mScrollView.getViewTreeObserver().addOnGlobalLayoutListener(this);
+        if (mImagePipeline.getMemoryGovernor() != null) {
+            mImagePipeline.getMemoryGovernor().addOnStageChangedListener(this);
+        }
+    }
+
+    void detach() {
+        if (!mAttached) {
+            return;
+        }
+        mAttached = false;
+        mScrollView.getViewTreeObserver().removeOnScrollChangedListener(this);
+        mScrollView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+        if (mImagePipeline.getMemoryGovernor() != null) {
+            mImagePipeline.getMemoryGovernor().removeOnStageChangedListener(this);
+        }
+        for (ImageView row : mTrackedRows) {
+            cancelPendingLoad((ImageItem) row.getTag());
+        }
+    }
+
+    /**
+     * Extra distance above and below the viewport within which bound rows stay bound.
+     * Defaults to one viewport height.
+     */
+    void setPrefetchMargin(int pPrefetchMargin) {
+        this.mPrefetchMargin = pPrefetchMargin;
+    }
+
+    @Override
+    public void onScrollChanged() {
+        mPrefetchPolicy.onScroll(mScrollView.getScrollY(), SystemClock.uptimeMillis());
+        bindVisibleRows();
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        bindVisibleRows();
+    }
+
+    @Override
+    public void onMemoryStageChanged(int pStage) {
+        if (mAttached) {
+            bindVisibleRows();
+        }
+    }
+
+    /**
+     * The bitmaps for the row have been loaded elsewhere. Takes them if the row is near the
+     * viewport and not bound yet; otherwise they go back to the pool and the row loads from
+     * the cache later.
+     */
+    void onImageLoaded(ImageView pImageView, ImageItem pItem, RowBitmaps pBitmaps) {
+        final int margin = mPrefetchMargin >= 0 ? mPrefetchMargin : mScrollView.getHeight();
+        final int viewportTop = mScrollView.getScrollY() - mLayout.getTop();
+        if (pItem.mBoundBitmap == null && !pItem.isTiled() && pImageView.getBottom() > viewportTop - margin
+                && pImageView.getTop() < viewportTop + mScrollView.getHeight() + margin) {
+            cancelPendingLoad(pItem);
+            setBitmap(pImageView, pItem, pBitmaps);
+        } else {
+            pBitmaps.release(mImagePipeline.getBitmapPool());
+        }
+    }
+
+    void bindVisibleRows() {
+        final int viewportHeight = mScrollView.getHeight();
+        final int margin = mPrefetchMargin >= 0 ? mPrefetchMargin : viewportHeight;
+        final int viewportTop = mScrollView.getScrollY() - mLayout.getTop();
+        final int viewportBottom = viewportTop + viewportHeight;
+        final int childCount = mLayout.getChildCount();
+        final MemoryGovernor governor = mImagePipeline.getMemoryGovernor();
+        final int stage = governor != null ? governor.getStage() : MemoryGovernor.STAGE_NORMAL;
+        mPass++;
+
+        // visible rows first, so their loads are queued ahead of any prefetch
+        int firstVisible = -1;
+        int lastVisible = -1;
+        for (int i = findFirstRow(viewportTop); i < childCount; i++) {
+            final View child = mLayout.getChildAt(i);
+            if (child.getBottom() > viewportTop && child.getTop() < viewportBottom) {
+                if (firstVisible < 0) {
+                    firstVisible = i;
+                }
+                lastVisible = i;
+                bind(child, PRIORITY_VISIBLE);
+            } else if (child.getTop() >= viewportBottom + mLayout.getGridCellSize()) {
+                // past the last grid row that can reach into the viewport, the cells of one
+                // row are centred and may start below cells that are visible
+                break;
+            }
+        }
+
+        // then the rows ahead in the direction of travel
+        int firstWanted = firstVisible;
+        int lastWanted = lastVisible;
+        if (firstVisible >= 0 && stage < MemoryGovernor.STAGE_NO_PREFETCH) {
+            final long now = SystemClock.uptimeMillis();
+            final int direction = mPrefetchPolicy.getDirection();
+            final int distance = mPrefetchPolicy.getPrefetchDistance(viewportHeight, now);
+            int prefetched = 0;
+            for (int i = direction > 0 ? lastVisible + 1 : firstVisible - 1;
+                 i >= 0 && i < childCount && prefetched < MAX_PREFETCH_ROWS; i += direction) {
+                final View child = mLayout.getChildAt(i);
+                final int gap = direction > 0 ? child.getTop() - viewportBottom : viewportTop - child.getBottom();
+                if (prefetched >= MIN_PREFETCH_ROWS && gap > distance) {
+                    break;
+                }
+                if (bind(child, PRIORITY_PREFETCH)) {
+                    prefetched++;
+                }
+                if (direction > 0) {
+                    lastWanted = i;
+                } else {
+                    firstWanted = i;
+                }
+            }
+        }
+
+        // rows may be hidden under the hover cell while dragging, keep everything bound then
+        final boolean canUnbind = !mLayout.isDragging();
+        final int keepTop = viewportTop - margin;
+        final int keepBottom = viewportBottom + margin;
+
+        for (Iterator<ImageView> rows = mTrackedRows.iterator(); rows.hasNext(); ) {
+            final ImageView child = rows.next();
+            final ImageItem item = (ImageItem) child.getTag();
+            if (item.mWantedPass == mPass) {
+                continue;
+            }
+            if (canUnbind && (child.getBottom() <= keepTop || child.getTop() >= keepBottom)) {
+                clear(child, item);
+            } else {
+                cancelPendingLoad(item);
+                if (canUnbind && stage >= MemoryGovernor.STAGE_THUMBNAILS) {
+                    downgrade(child, item);
+                }
+            }
+            if (item.mBoundBitmap == null && item.mThumbnail == null && item.mPendingLoad == null) {
+                rows.remove();
+            }
+        }
+
+        if (governor != null) {
+            // may call back into this method once if the stage changes
+            governor.update(SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * Index of the first row that may reach below viewportTop. Rows are laid out top to
+     * bottom in child order, so their bottoms never decrease; in a grid the row of cells is
+     * computed instead, since centred cells of one row end at different heights.
+     */
+    private int findFirstRow(final int pViewportTop) {
+        final int childCount = mLayout.getChildCount();
+        final int cellSize = mLayout.getGridCellSize();
+        if (cellSize > 0) {
+            final int gridRow = Math.max(0, (pViewportTop - mLayout.getPaddingTop()) / cellSize);
+            return (int) Math.min(childCount, (long) gridRow * mLayout.getGridColumnCount());
+        }
+
+        int low = 0;
+        int high = childCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mLayout.getChildAt(middle).getBottom() > pViewportTop) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isBindable(View pChild) {
+        // tiled rows decode their own strips
+        return pChild instanceof ImageView && pChild.getTag() instanceof ImageItem
+                && ((ImageItem) pChild.getTag()).getUri() != null && !((ImageItem) pChild.getTag()).isTiled();
+    }
+
+    /**
+     * @return true when child is a row that can take a bitmap, whether or not it needed one
+     */
+    private boolean bind(final View pChild, final int pPriority) {
+        if (!isBindable(pChild)) {
+            return false;
+        }
+        final ImageView imageView = (ImageView) pChild;
+        final ImageItem item = (ImageItem) pChild.getTag();
+        item.mWantedPass = mPass;
+        if (item.mBoundBitmap != null) {
+            return true;
+        }
+
+        if (item.mPendingLoad != null) {
+            final LoadTask pending = (LoadTask) item.mPendingLoad;
+            if (pending.mPriority <= pPriority || pending.mStarted) {
+                return true;
+            }
+            // a prefetched row came into view before its turn, queue it with the visible ones
+            cancelPendingLoad(item);
+        }
+
+        // even a cached bitmap is loaded on a loader thread, which draws the row copies
+        final LoadTask task = new LoadTask(imageView, item, ++item.mBindGeneration, pPriority, mTaskSequence++);
+        item.mPendingLoad = task;
+        mTrackedRows.add(imageView);
+        mExecutor.execute(task);
+        return true;
+    }
+
+    private void cancelPendingLoad(final ImageItem pItem) {
+        if (pItem.mPendingLoad == null) {
+            return;
+        }
+        pItem.mBindGeneration++;
+        pItem.mPendingLoad.cancel(false);
+        mExecutor.remove((LoadTask) pItem.mPendingLoad);
+        pItem.mPendingLoad = null;
+    }
+
+    void unbind(final ImageView pImageView, final ImageItem pItem) {
+        mTrackedRows.remove(pImageView);
+        clear(pImageView, pItem);
+    }
+
+    /**
+     * Bytes of the private copies and thumbnails bound by this binder, counted over the
+     * bound rows only.
+     */
+    long getBoundByteCount() {
+        long bytes = 0;
+        for (ImageView row : mTrackedRows) {
+            bytes += DraggableImageLayout.getRowByteCount((ImageItem) row.getTag());
+        }
+        return bytes;
+    }
+
+    private void clear(final ImageView pImageView, final ImageItem pItem) {
+        pItem.mBindGeneration++;
+        cancelPendingLoad(pItem);
+
+        if (pItem.mBoundBitmap == null && pItem.mThumbnail == null) {
+            return;
+        }
+
+        pImageView.setImageDrawable(null);
+        if (pItem.mBoundBitmap != null && pItem.mOwnsBitmap) {
+            mImagePipeline.getBitmapPool().put(pItem.mBoundBitmap);
+        }
+        if (pItem.mThumbnail != null && pItem.mThumbnail != pItem.mBoundBitmap) {
+            mImagePipeline.getBitmapPool().put(pItem.mThumbnail);
+        }
+        pItem.mBoundBitmap = null;
+        pItem.mThumbnail = null;
+        pItem.mOwnsBitmap = false;
+    }
+
+    /**
+     * Keeps only the thumbnail of a bound row. It loads its full size bitmap again, like an
+     * unbound row, once it is visible.
+     */
+    private void downgrade(final ImageView pImageView, final ImageItem pItem) {
+        if (pItem.mBoundBitmap == null || pItem.mThumbnail == null || pItem.mThumbnail == pItem.mBoundBitmap) {
+            return;
+        }
+        pImageView.setImageBitmap(pItem.mThumbnail);
+        if (pItem.mOwnsBitmap) {
+            mImagePipeline.getBitmapPool().put(pItem.mBoundBitmap);
+        }
+        pItem.mBoundBitmap = null;
+        pItem.mOwnsBitmap = false;
+    }
+
+    private void setBitmap(ImageView pImageView, ImageItem pItem, RowBitmaps pBitmaps) {
+        // a downgraded row still shows its old thumbnail, pool it once it is replaced
+        final Bitmap oldThumbnail = pItem.mThumbnail;
+
+        pItem.mBoundBitmap = pBitmaps.getBitmap();
+        pItem.mOwnsBitmap = pBitmaps.ownsBitmap();
+        pItem.mThumbnail = pBitmaps.getThumbnail();
+        pImageView.setImageBitmap(mLayout.isShowingThumbnails() ? pItem.mThumbnail : pItem.mBoundBitmap);
+        mTrackedRows.add(pImageView);
+
+        if (oldThumbnail != null) {
+            mImagePipeline.getBitmapPool().put(oldThumbnail);
+        }
+    }
+
+    /**
+     * Load of one row, ordered in the executor queue by priority and then by age.
+     */
+    private class LoadTask extends FutureTask<Void> implements Comparable<LoadTask> {
+
+        final int mPriority;
+
+        private final long mSequence;
+
+        volatile boolean mStarted = false;
+
+
+        LoadTask(final ImageView pImageView, final ImageItem pItem, final int pGeneration, final int pPriority, long pSequence) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    if (pPriority == PRIORITY_PREFETCH) {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    }
+                    RowBitmaps loaded = null;
+                    boolean threw = false;
+                    try {
+                        loaded = mImagePipeline.loadRow(pItem);
+                    } catch (RuntimeException ex) {
+                        // a FutureTask would keep it to itself, and the row would stay pending
+                        threw = true;
+                    } catch (OutOfMemoryError error) {
+                        // left unbound, the next pass tries again
+                    } finally {
+                        if (pPriority == PRIORITY_PREFETCH) {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        }
+                    }
+                    final RowBitmaps bitmaps = loaded;
+                    final boolean failed = threw;
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            final boolean current = pItem.mBindGeneration == pGeneration;
+                            if (current) {
+                                pItem.mPendingLoad = null;
+                            }
+                            if (bitmaps == null) {
+                                if (mAttached && (failed || mImagePipeline.isUnreadable(pItem.getUri()))) {
+                                    // retrying on every bind would never show anything
+                                    mLayout.removeUnreadableImage(pItem);
+                                }
+                                return;
+                            }
+                            if (current && mAttached) {
+                                setBitmap(pImageView, pItem, bitmaps);
+                            } else {
+                                // the row moved on while this was loading
+                                bitmaps.release(mImagePipeline.getBitmapPool());
+                            }
+                        }
+                    });
+                }
+            }, null);
+            this.mPriority = pPriority;
+            this.mSequence = pSequence;
+        }
+
+        @Override
+        public void run() {
+            mStarted = true;
+            super.run();
+        }
+
+        @Override
+        public int compareTo(LoadTask another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : mSequence == another.mSequence ? 0 : 1;
+        }
+    }
+}
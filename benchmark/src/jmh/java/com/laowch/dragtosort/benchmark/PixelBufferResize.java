@@ -0,0 +1,56 @@
+package com.laowch.dragtosort.benchmark;
+
+import com.laowch.dragtosort.CenterCropUtils;
+
+/**
+ * The center-crop resize of {@code BitmapUtils.resizeBitmap} on plain ARGB int buffers:
+ * the same source rectangle from {@link CenterCropUtils}, sampled bilinearly the way a
+ * filtering Paint does. Lets the cost of the math be measured on a desktop JVM.
+ */
+public class PixelBufferResize {
+
+    /**
+     * @param dst receives requestedWidth x requestedHeight pixels, row by row
+     */
+    public static void resize(final int[] src, final int srcWidth, final int srcHeight,
+                              final int[] dst, final int requestedWidth, final int requestedHeight) {
+        final int[] rect = new int[4];
+        CenterCropUtils.computeSourceRect(srcWidth, srcHeight, requestedWidth, requestedHeight, rect);
+
+        final float scaleX = (float) (rect[2] - rect[0]) / requestedWidth;
+        final float scaleY = (float) (rect[3] - rect[1]) / requestedHeight;
+
+        for (int y = 0; y < requestedHeight; y++) {
+            final float sy = rect[1] + (y + 0.5f) * scaleY - 0.5f;
+            final int y0 = clamp((int) Math.floor(sy), 0, srcHeight - 1);
+            final int y1 = Math.min(y0 + 1, srcHeight - 1);
+            final int fy = (int) ((sy - Math.floor(sy)) * 256);
+
+            for (int x = 0; x < requestedWidth; x++) {
+                final float sx = rect[0] + (x + 0.5f) * scaleX - 0.5f;
+                final int x0 = clamp((int) Math.floor(sx), 0, srcWidth - 1);
+                final int x1 = Math.min(x0 + 1, srcWidth - 1);
+                final int fx = (int) ((sx - Math.floor(sx)) * 256);
+
+                dst[y * requestedWidth + x] = blend(
+                        blend(src[y0 * srcWidth + x0], src[y0 * srcWidth + x1], fx),
+                        blend(src[y1 * srcWidth + x0], src[y1 * srcWidth + x1], fx),
+                        fy);
+            }
+        }
+    }
+
+    /**
+     * Mixes two ARGB colors channel by channel, weight in 0..256 towards b.
+     */
+    private static int blend(final int a, final int b, final int weight) {
+        final int inverse = 256 - weight;
+        final int ag = ((a >>> 8) & 0x00ff00ff) * inverse + ((b >>> 8) & 0x00ff00ff) * weight;
+        final int rb = (a & 0x00ff00ff) * inverse + (b & 0x00ff00ff) * weight;
+        return (ag & 0xff00ff00) | ((rb >>> 8) & 0x00ff00ff);
+    }
+
+    private static int clamp(final int value, final int min, final int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+}
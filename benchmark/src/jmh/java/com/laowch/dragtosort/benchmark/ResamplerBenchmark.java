@@ -0,0 +1,93 @@
+package com.laowch.dragtosort.benchmark;
+
+import com.laowch.dragtosort.ArgbResampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ArgbResampler} on one and on all cores against {@link NaiveResampler}, for a
+ * small and a large downscale of a camera-sized picture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResamplerBenchmark {
+
+    private static final int SOURCE_WIDTH = 2048;
+
+    private static final int SOURCE_HEIGHT = 1536;
+
+    @Param({"0", "1"})
+    public int filter;
+
+    /**
+     * Output width, the height follows the aspect ratio.
+     */
+    @Param({"1080", "256"})
+    public int targetWidth;
+
+    private int[] mSource;
+
+    private int[] mTarget;
+
+    private int mTargetHeight;
+
+    private ExecutorService mExecutor;
+
+    private ArgbResampler mSingle;
+
+    private ArgbResampler mParallel;
+
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mSource = new int[SOURCE_WIDTH * SOURCE_HEIGHT];
+        for (int i = 0; i < mSource.length; i++) {
+            mSource[i] = random.nextInt() | 0xff000000;
+        }
+        mTargetHeight = targetWidth * SOURCE_HEIGHT / SOURCE_WIDTH;
+        mTarget = new int[targetWidth * mTargetHeight];
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        mExecutor = Executors.newFixedThreadPool(Math.max(1, cores - 1));
+        mSingle = new ArgbResampler(filter);
+        mParallel = new ArgbResampler(filter, mExecutor, cores);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public int[] naive() {
+        NaiveResampler.resample(filter, mSource, SOURCE_WIDTH, SOURCE_HEIGHT, mTarget, targetWidth, mTargetHeight);
+        return mTarget;
+    }
+
+    @Benchmark
+    public int[] separableSingleThread() {
+        mSingle.resample(mSource, SOURCE_WIDTH, SOURCE_HEIGHT, mTarget, targetWidth, mTargetHeight);
+        return mTarget;
+    }
+
+    @Benchmark
+    public int[] separableAllCores() {
+        mParallel.resample(mSource, SOURCE_WIDTH, SOURCE_HEIGHT, mTarget, targetWidth, mTargetHeight);
+        return mTarget;
+    }
+}
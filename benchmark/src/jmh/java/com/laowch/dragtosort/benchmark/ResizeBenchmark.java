@@ -0,0 +1,94 @@
+package com.laowch.dragtosort.benchmark;
+
+import com.laowch.dragtosort.SampleSizeUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Center-crop resize of a decoded picture to the row size, for typical camera and screen
+ * sizes. The decoded size is what the bounds-first decode leaves after subsampling. Rows
+ * either keep the picture's aspect ratio, a plain scale, or are square, which crops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResizeBenchmark {
+
+    /**
+     * Source size before subsampling, width x height.
+     */
+    @Param({"1280x720", "3264x2448", "4000x3000", "2448x3264"})
+    public String sourceSize;
+
+    @Param({"720", "1080"})
+    public int requestedWidth;
+
+    /**
+     * Row aspect ratio, width:height, or "source" to keep the picture's.
+     */
+    @Param({"source", "1:1"})
+    public String targetAspect;
+
+    private int[] mSource;
+    private int mSourceWidth;
+    private int mSourceHeight;
+
+    private int mRequestedHeight;
+
+    private int[] mTarget;
+
+
+    @Setup
+    public void setUp() {
+        final String[] size = sourceSize.split("x");
+        final int width = Integer.parseInt(size[0]);
+        final int height = Integer.parseInt(size[1]);
+
+        final int sampleSize = SampleSizeUtils.calculateInSampleSize(width, height, requestedWidth, 0);
+        mSourceWidth = SampleSizeUtils.sampledSize(width, sampleSize);
+        mSourceHeight = SampleSizeUtils.sampledSize(height, sampleSize);
+        if ("source".equals(targetAspect)) {
+            mRequestedHeight = SampleSizeUtils.scaledHeight(width, height, requestedWidth);
+        } else {
+            final String[] aspect = targetAspect.split(":");
+            mRequestedHeight = SampleSizeUtils.scaledHeight(Integer.parseInt(aspect[0]), Integer.parseInt(aspect[1]),
+                    requestedWidth);
+        }
+
+        mSource = new int[mSourceWidth * mSourceHeight];
+        final Random random = new Random(42);
+        for (int i = 0; i < mSource.length; i++) {
+            mSource[i] = random.nextInt() | 0xff000000;
+        }
+        mTarget = new int[requestedWidth * mRequestedHeight];
+    }
+
+    /**
+     * Draws into a fresh buffer per call, like a resize without a bitmap pool.
+     */
+    @Benchmark
+    public int[] resizeAllocating() {
+        final int[] target = new int[requestedWidth * mRequestedHeight];
+        PixelBufferResize.resize(mSource, mSourceWidth, mSourceHeight, target, requestedWidth, mRequestedHeight);
+        return target;
+    }
+
+    /**
+     * Draws into the same buffer every call, like a resize into a pooled bitmap.
+     */
+    @Benchmark
+    public int[] resizeReusing() {
+        PixelBufferResize.resize(mSource, mSourceWidth, mSourceHeight, mTarget, requestedWidth, mRequestedHeight);
+        return mTarget;
+    }
+}
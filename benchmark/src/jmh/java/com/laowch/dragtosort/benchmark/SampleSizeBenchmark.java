@@ -0,0 +1,50 @@
+package com.laowch.dragtosort.benchmark;
+
+import com.laowch.dragtosort.SampleSizeUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The size arithmetic run for every import before any pixel is decoded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SampleSizeBenchmark {
+
+    @Param({"1280x720", "4000x3000", "12000x9000"})
+    public String sourceSize;
+
+    @Param({"720", "1080"})
+    public int requestedWidth;
+
+    private int mWidth;
+    private int mHeight;
+
+
+    @Setup
+    public void setUp() {
+        final String[] size = sourceSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+    }
+
+    @Benchmark
+    public void planDecode(final Blackhole blackhole) {
+        final int sampleSize = SampleSizeUtils.calculateInSampleSize(mWidth, mHeight, requestedWidth, 0);
+        blackhole.consume(SampleSizeUtils.sampledSize(mWidth, sampleSize));
+        blackhole.consume(SampleSizeUtils.scaledHeight(mWidth, mHeight, requestedWidth));
+        blackhole.consume(SampleSizeUtils.estimatePeakBytes(mWidth, mHeight, requestedWidth,
+                SampleSizeUtils.BYTES_PER_PIXEL_ARGB_8888));
+    }
+}
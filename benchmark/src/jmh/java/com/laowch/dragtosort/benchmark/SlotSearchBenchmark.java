@@ -0,0 +1,75 @@
+package com.laowch.dragtosort.benchmark;
+
+import com.laowch.dragtosort.SlotSearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The target slot lookup done by handleCellSwitch on every move event and auto-scroll
+ * frame, against a linear scan of the same slots as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SlotSearchBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int listLength;
+
+    private int[] mSlotTops;
+
+    private final int[] mQueries = new int[QUERY_COUNT];
+
+    private int mNextQuery = 0;
+
+    private int mMobileSlot = 0;
+
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mSlotTops = new int[listLength + 1];
+        for (int i = 0; i < listLength; i++) {
+            // collapsed rows, between 30 and 330 pixels high
+            mSlotTops[i + 1] = mSlotTops[i] + 30 + random.nextInt(300);
+        }
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            mQueries[i] = random.nextInt(mSlotTops[listLength]);
+        }
+    }
+
+    @Benchmark
+    public int binarySearch() {
+        final int y = mQueries[mNextQuery++ & (QUERY_COUNT - 1)];
+        mMobileSlot = SlotSearch.findTargetSlot(mSlotTops, listLength, mMobileSlot, y);
+        return mMobileSlot;
+    }
+
+    /**
+     * Same answer as {@link SlotSearch#findTargetSlot}, counting the middles above y one by one.
+     */
+    @Benchmark
+    public int linearScan() {
+        final int y = mQueries[mNextQuery++ & (QUERY_COUNT - 1)];
+        int above = 0;
+        while (above < listLength && mSlotTops[above] + (mSlotTops[above + 1] - mSlotTops[above]) / 2 < y) {
+            above++;
+        }
+        // the dragged row itself does not count
+        final int slot = mMobileSlot < above ? above - 1 : above;
+        mMobileSlot = Math.max(0, Math.min(listLength - 1, slot));
+        return mMobileSlot;
+    }
+}